@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.detail;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
+
+import com.mfarssac.moviedb.R;
+import com.mfarssac.moviedb.repository.room.MovieDatabase;
+import com.mfarssac.moviedb.repository.room.TestMovies;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Opens the details of a stored movie twice: the first time it is read from the database, the
+ * second time from the memory cache of the repository. Logs the time from the launch to the
+ * first frame drawn and whether that frame shows the movie, which it must on a cache hit.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetailFirstFrameBenchmark {
+    private static final String LOG_TAG = DetailFirstFrameBenchmark.class.getSimpleName();
+
+    // Far from the ids of the synced movies
+    private static final int MOVIE_ID = 900_001;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    @Test
+    public void firstFrame_benchmark() {
+        MovieDatabase.getInstance(mInstrumentation.getTargetContext()).MoviesDao()
+                .bulkInsert(TestMovies.create(MOVIE_ID, 1));
+
+        FirstFrame miss = launch();
+        FirstFrame hit = launch();
+
+        Log.i(LOG_TAG, "First frame " + miss + " when read from the database, "
+                + hit + " when cached");
+        assertTrue("The cached movie wasn't in the first frame", hit.mMovieShown);
+    }
+
+    /**
+     * Opens the details of the movie, then closes them once drawn.
+     */
+    private FirstFrame launch() {
+        Application application =
+                (Application) mInstrumentation.getTargetContext().getApplicationContext();
+        FirstFrame firstFrame = new FirstFrame();
+        Application.ActivityLifecycleCallbacks callbacks = new LifecycleCallbacks() {
+            @Override
+            public void onActivityResumed(Activity activity) {
+                if (activity instanceof DetailActivity) firstFrame.follow(activity);
+            }
+        };
+        application.registerActivityLifecycleCallbacks(callbacks);
+
+        Intent intent = new Intent(mInstrumentation.getTargetContext(), DetailActivity.class)
+                .putExtra(DetailActivity.MOVIE_ID_EXTRA, MOVIE_ID)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        firstFrame.mStartNanos = System.nanoTime();
+        Activity activity = mInstrumentation.startActivitySync(intent);
+
+        application.unregisterActivityLifecycleCallbacks(callbacks);
+        mInstrumentation.runOnMainSync(activity::finish);
+        mInstrumentation.waitForIdleSync();
+        assertTrue("No frame drawn", firstFrame.mDrawnNanos != 0);
+        return firstFrame;
+    }
+
+    /**
+     * What the first frame of the details showed, and when.
+     */
+    private static class FirstFrame {
+        long mStartNanos;
+        long mDrawnNanos;
+        boolean mMovieShown;
+
+        void follow(Activity activity) {
+            View decorView = activity.getWindow().getDecorView();
+            TextView title = activity.findViewById(R.id.movie_title);
+            decorView.getViewTreeObserver().addOnPreDrawListener(
+                    new ViewTreeObserver.OnPreDrawListener() {
+                        @Override
+                        public boolean onPreDraw() {
+                            decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                            mDrawnNanos = System.nanoTime();
+                            mMovieShown = !TextUtils.isEmpty(title.getText());
+                            return true;
+                        }
+                    });
+        }
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMillis(mDrawnNanos - mStartNanos) + " ms after the "
+                    + "launch, " + (mMovieShown ? "with" : "without") + " the movie";
+        }
+    }
+
+    private abstract static class LifecycleCallbacks
+            implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
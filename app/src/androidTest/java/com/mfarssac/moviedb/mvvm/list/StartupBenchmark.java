@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.list;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.mfarssac.moviedb.R;
+import com.mfarssac.moviedb.repository.room.MovieDatabase;
+import com.mfarssac.moviedb.repository.room.TestMovies;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from the launch of {@link MainActivity} to the first movies laid out on
+ * screen, with stored movies. The first launch creates the repository, the database and the
+ * poster store, as a cold start of the app does; the next ones find them created.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String LOG_TAG = StartupBenchmark.class.getSimpleName();
+
+    private static final int STORED_MOVIES = 100;
+    private static final int LAUNCHES = 6;
+    private static final long TIMEOUT_SECONDS = 10;
+    // Resolution of the measures
+    private static final long POLL_MILLIS = 5;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    @Test
+    public void startup_benchmark() throws InterruptedException {
+        MovieDatabase.getInstance(mInstrumentation.getTargetContext()).MoviesDao()
+                .bulkInsert(TestMovies.create(1, STORED_MOVIES));
+
+        long[] nanos = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            nanos[i] = launchNanos();
+        }
+        long first = nanos[0];
+        Arrays.sort(nanos, 1, LAUNCHES);
+        Log.i(LOG_TAG, "First movies shown " + TimeUnit.NANOSECONDS.toMillis(first)
+                + " ms after the first launch, " + TimeUnit.NANOSECONDS.toMillis(
+                nanos[1 + (LAUNCHES - 1) / 2]) + " ms after the next ones (median)");
+    }
+
+    /**
+     * Launches the list, waits for its first movies to be laid out, then closes it.
+     *
+     * @return The time from the launch to the first movies laid out
+     */
+    private long launchNanos() throws InterruptedException {
+        Intent intent = new Intent(mInstrumentation.getTargetContext(), MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        long start = System.nanoTime();
+        Activity activity = mInstrumentation.startActivitySync(intent);
+        RecyclerView list = activity.findViewById(R.id.recyclerview_movie);
+
+        long deadline = start + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        boolean[] shown = new boolean[1];
+        long shownNanos;
+        while (true) {
+            mInstrumentation.runOnMainSync(() -> shown[0] = list.getChildCount() > 0);
+            shownNanos = System.nanoTime();
+            if (shown[0]) break;
+            if (shownNanos > deadline) throw new AssertionError("No movies shown");
+            Thread.sleep(POLL_MILLIS);
+        }
+
+        mInstrumentation.runOnMainSync(activity::finish);
+        mInstrumentation.waitForIdleSync();
+        return shownNanos - start;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.list;
+
+import android.app.Instrumentation;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.ViewGroup;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the frames drawn while a list of 1,000 movies is swapped for a reordered one, with
+ * the diff computed by an {@link AsyncListDiffer} as {@link MovieAdapter} does, and with
+ * {@link DiffUtil} on the main thread as it was done before. The longest frame, which tells how
+ * long the main thread was held, is logged; the test asserts on which thread the movies were
+ * compared.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SwapMoviesBenchmark {
+    private static final String LOG_TAG = SwapMoviesBenchmark.class.getSimpleName();
+
+    private static final int MOVIES = 1000;
+    private static final int FRAMES = 60;
+    // The swap is made in this frame, once the frames have settled
+    private static final int SWAP_FRAME = 10;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final long POLL_MILLIS = 10;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    @Test
+    public void swap_benchmark() throws InterruptedException {
+        List<ListMovieEntry> oldMovies = movies(0);
+        List<ListMovieEntry> newMovies = movies(1);
+
+        RecordingCallback asyncCallback = new RecordingCallback();
+        DifferAdapter async = new DifferAdapter(asyncCallback);
+        mInstrumentation.runOnMainSync(() -> async.mDiffer.submitList(oldMovies));
+        awaitList(async, oldMovies);
+        asyncCallback.reset();
+        long asyncFrameNanos = longestFrameNanos(() -> async.mDiffer.submitList(newMovies));
+        awaitList(async, newMovies);
+
+        RecordingCallback mainThreadCallback = new RecordingCallback();
+        MainThreadAdapter mainThread = new MainThreadAdapter(oldMovies, mainThreadCallback);
+        long mainThreadFrameNanos = longestFrameNanos(() -> mainThread.swap(newMovies));
+        assertEquals(newMovies, mainThread.mMovies);
+
+        Log.i(LOG_TAG, "Longest frame while swapping " + MOVIES + " movies: "
+                + TimeUnit.NANOSECONDS.toMillis(asyncFrameNanos) + " ms with AsyncListDiffer, "
+                + TimeUnit.NANOSECONDS.toMillis(mainThreadFrameNanos)
+                + " ms with DiffUtil on the main thread");
+        assertEquals(0, asyncCallback.mMainThreadCalls.get());
+        assertTrue(asyncCallback.mBackgroundCalls.get() >= MOVIES);
+        assertTrue(mainThreadCallback.mMainThreadCalls.get() >= MOVIES);
+    }
+
+    /**
+     * Follows {@link #FRAMES} frames of the main thread, making the swap in one of them.
+     *
+     * @return The longest time between two frames
+     */
+    private long longestFrameNanos(Runnable swap) throws InterruptedException {
+        long[] longest = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(() ->
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    private long mLastFrameNanos;
+                    private int mFrames;
+
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        if (mLastFrameNanos != 0) {
+                            longest[0] = Math.max(longest[0], frameTimeNanos - mLastFrameNanos);
+                        }
+                        mLastFrameNanos = frameTimeNanos;
+                        if (++mFrames == SWAP_FRAME) swap.run();
+                        if (mFrames < FRAMES) {
+                            Choreographer.getInstance().postFrameCallback(this);
+                        } else {
+                            done.countDown();
+                        }
+                    }
+                }));
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return longest[0];
+    }
+
+    private void awaitList(DifferAdapter adapter, List<ListMovieEntry> movies)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        boolean[] current = new boolean[1];
+        while (System.nanoTime() < deadline) {
+            mInstrumentation.runOnMainSync(() ->
+                    current[0] = adapter.mDiffer.getCurrentList() == movies);
+            if (current[0]) return;
+            Thread.sleep(POLL_MILLIS);
+        }
+        throw new AssertionError("The diff wasn't applied");
+    }
+
+    /**
+     * @param sync The number of the sync, each one changing the popularity of every movie
+     * @return The movies, sorted from the most popular as the list shows them
+     */
+    private static List<ListMovieEntry> movies(int sync) {
+        List<ListMovieEntry> movies = new ArrayList<>(MOVIES);
+        for (int id = 1; id <= MOVIES; id++) {
+            float popularity = (id * 7919 + sync * id * 104729) % 100_000 / 100f;
+            movies.add(new ListMovieEntry(id, "Movie " + id, popularity, "/poster" + id + ".jpg",
+                    "en", "Original movie " + id, 100 + id));
+        }
+        Collections.sort(movies, (a, b) -> Float.compare(b.getPopularity(), a.getPopularity()));
+        return movies;
+    }
+
+    /**
+     * Adapter which isn't displayed, only told about the changes of its list.
+     */
+    private abstract static class UndisplayedAdapter
+            extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Compares the movies as {@link MovieAdapter} does, counting the comparisons made on the
+     * main thread and on the others.
+     */
+    private static class RecordingCallback extends DiffUtil.ItemCallback<ListMovieEntry> {
+        final AtomicInteger mMainThreadCalls = new AtomicInteger();
+        final AtomicInteger mBackgroundCalls = new AtomicInteger();
+
+        void reset() {
+            mMainThreadCalls.set(0);
+            mBackgroundCalls.set(0);
+        }
+
+        @Override
+        public boolean areItemsTheSame(ListMovieEntry oldMovie, ListMovieEntry newMovie) {
+            record();
+            return MovieAdapter.DIFF_CALLBACK.areItemsTheSame(oldMovie, newMovie);
+        }
+
+        @Override
+        public boolean areContentsTheSame(ListMovieEntry oldMovie, ListMovieEntry newMovie) {
+            record();
+            return MovieAdapter.DIFF_CALLBACK.areContentsTheSame(oldMovie, newMovie);
+        }
+
+        private void record() {
+            if (Looper.getMainLooper().isCurrentThread()) {
+                mMainThreadCalls.incrementAndGet();
+            } else {
+                mBackgroundCalls.incrementAndGet();
+            }
+        }
+    }
+
+    private static class DifferAdapter extends UndisplayedAdapter {
+        final AsyncListDiffer<ListMovieEntry> mDiffer;
+
+        DifferAdapter(DiffUtil.ItemCallback<ListMovieEntry> callback) {
+            mDiffer = new AsyncListDiffer<>(this, callback);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mDiffer.getCurrentList().size();
+        }
+    }
+
+    private static class MainThreadAdapter extends UndisplayedAdapter {
+        final DiffUtil.ItemCallback<ListMovieEntry> mCallback;
+        List<ListMovieEntry> mMovies;
+
+        MainThreadAdapter(List<ListMovieEntry> movies,
+                DiffUtil.ItemCallback<ListMovieEntry> callback) {
+            mMovies = movies;
+            mCallback = callback;
+        }
+
+        void swap(List<ListMovieEntry> movies) {
+            List<ListMovieEntry> oldMovies = mMovies;
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldMovies.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return movies.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return mCallback.areItemsTheSame(oldMovies.get(oldPosition),
+                            movies.get(newPosition));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return mCallback.areContentsTheSame(oldMovies.get(oldPosition),
+                            movies.get(newPosition));
+                }
+            });
+            mMovies = movies;
+            diff.dispatchUpdatesTo(this);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mMovies.size();
+        }
+    }
+}
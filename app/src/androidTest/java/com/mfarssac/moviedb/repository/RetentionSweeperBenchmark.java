@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+import com.mfarssac.moviedb.repository.room.MovieDao;
+import com.mfarssac.moviedb.repository.room.MovieDatabase;
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+import com.mfarssac.moviedb.repository.room.TestMovies;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the writes of a sync on a database like the app's one: how long they take for
+ * batches of 50, 1,000 and 10,000 movies, and how many times they make the list of movies
+ * observed by the UI query the database again. Inserting and trimming through the
+ * {@link RetentionSweeper} is compared with running the statements one by one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RetentionSweeperBenchmark {
+    private static final String LOG_TAG = RetentionSweeperBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "retention-benchmark";
+    private static final int[] BATCH_SIZES = {50, 1000, 10_000};
+    private static final int BATCHES = 5;
+    private static final int LISTED_MOVIES = 60;
+    private static final long QUERY_TIMEOUT_SECONDS = 10;
+    // Time left to Room to run the queries a write causes, once the first one ran
+    private static final long SETTLE_MILLIS = 500;
+    // No poster store here
+    private static final Runnable NO_CLEANUP = () -> {
+    };
+
+    private Context mContext;
+    private MovieDatabase mDatabase;
+    private MovieDao mMovieDao;
+    private LiveData<List<ListMovieEntry>> mMovies;
+    // Released each time the list is queried again
+    private final Semaphore mQueries = new Semaphore(0);
+    private final Observer<List<ListMovieEntry>> mObserver = movies -> mQueries.release();
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = MovieDatabase.create(mContext, DATABASE_NAME);
+        mMovieDao = mDatabase.MoviesDao();
+        mMovies = mMovieDao.getMostPopularMovies(LISTED_MOVIES);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                mMovies.observeForever(mObserver));
+        // The first query, made when observing starts
+        awaitQueries();
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                mMovies.removeObserver(mObserver));
+        mDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void writeAndSweep_queriesTheListOncePerBatch() throws InterruptedException {
+        for (int batchSize : BATCH_SIZES) {
+            // Every batch is swept
+            RetentionSweeper sweeper = new RetentionSweeper(mDatabase,
+                    RetentionPolicy.keepMostPopular(batchSize), 0, NO_CLEANUP);
+            long nanos = 0;
+            int queries = 0;
+            for (int i = 0; i < BATCHES; i++) {
+                MovieEntry[] movies = nextMovies(batchSize);
+                long start = System.nanoTime();
+                sweeper.writeAndSweep(() -> mMovieDao.bulkInsert(movies));
+                nanos += System.nanoTime() - start;
+                queries += awaitQueries();
+            }
+            report("One transaction", batchSize, nanos, queries);
+            assertEquals(BATCHES, queries);
+        }
+    }
+
+    @Test
+    public void statementByStatement_benchmark() throws InterruptedException {
+        for (int batchSize : BATCH_SIZES) {
+            long nanos = 0;
+            int queries = 0;
+            for (int i = 0; i < BATCHES; i++) {
+                MovieEntry[] movies = nextMovies(batchSize);
+                long start = System.nanoTime();
+                // As the repository wrote a sync before the sweep joined the insert transaction
+                mMovieDao.getMostPopularMoviesSize();
+                mMovieDao.bulkInsert(movies);
+                mMovieDao.deleteOldPopularMovies(batchSize);
+                mMovieDao.getMostPopularMoviesSize();
+                nanos += System.nanoTime() - start;
+                queries += awaitQueries();
+            }
+            report("Statement by statement", batchSize, nanos, queries);
+        }
+    }
+
+    private MovieEntry[] nextMovies(int count) {
+        MovieEntry[] movies = TestMovies.create(mNextId, count);
+        mNextId += count;
+        return movies;
+    }
+
+    /**
+     * Waits for the list to be queried again, then for the queries which may follow.
+     *
+     * @return The number of queries made
+     */
+    private int awaitQueries() throws InterruptedException {
+        assertTrue("The list wasn't queried",
+                mQueries.tryAcquire(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(SETTLE_MILLIS);
+        return 1 + mQueries.drainPermits();
+    }
+
+    private static void report(String way, int batchSize, long nanos, int queries) {
+        Log.i(LOG_TAG, way + ": " + TimeUnit.NANOSECONDS.toMicros(nanos / BATCHES)
+                + " us per batch of " + batchSize + " movies, list queried " + queries
+                + " times for " + BATCHES + " batches");
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency of the detail reads while a sync of 10,000 movies is being written, on a
+ * file-backed database in write-ahead logging mode like the app's one. Readers aren't blocked by
+ * the write transaction, so every write sees many reads complete before it commits; a blocked
+ * reader would see none. The latencies are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadBenchmark {
+    private static final String LOG_TAG = ConcurrentReadBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "concurrent-read-benchmark";
+    private static final int STORED_MOVIES = 1000;
+    private static final int WRITTEN_MOVIES = 10_000;
+    private static final int IDLE_READS = 1000;
+    private static final int MAX_READS = 100_000;
+    private static final int MIN_READS_DURING_WRITE = 20;
+    private static final int WRITES = 3;
+
+    private Context mContext;
+    private MovieDatabase mDatabase;
+    private MovieDao mMovieDao;
+    private ExecutorService mWriter;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = MovieDatabase.create(mContext, DATABASE_NAME);
+        mMovieDao = mDatabase.MoviesDao();
+        mMovieDao.bulkInsert(TestMovies.create(1, STORED_MOVIES));
+        mWriter = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.shutdownNow();
+        mDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void database_isInWriteAheadLoggingMode() {
+        assertTrue(mDatabase.getOpenHelper().getWritableDatabase().isWriteAheadLoggingEnabled());
+    }
+
+    @Test
+    public void reads_duringWrite_areNotBlocked() throws Exception {
+        long[] idle = new long[IDLE_READS];
+        for (int i = 0; i < IDLE_READS; i++) {
+            idle[i] = timeRead(i);
+        }
+        Log.i(LOG_TAG, "Read p99: " + TimeUnit.NANOSECONDS.toMicros(percentile99(idle, IDLE_READS))
+                + " us idle");
+
+        for (int w = 0; w < WRITES; w++) {
+            MovieEntry[] sync = TestMovies.create(STORED_MOVIES + 1 + w * WRITTEN_MOVIES,
+                    WRITTEN_MOVIES);
+            long[] during = new long[MAX_READS];
+            int reads = 0;
+            long start = System.nanoTime();
+            Future<?> write = mWriter.submit(() -> mMovieDao.bulkInsert(sync));
+            // Only the reads done before the write commits count
+            while (reads < MAX_READS) {
+                long readNanos = timeRead(reads);
+                if (write.isDone()) break;
+                during[reads++] = readNanos;
+            }
+            write.get();
+            long writeNanos = System.nanoTime() - start;
+            assertEquals(STORED_MOVIES + (w + 1) * WRITTEN_MOVIES,
+                    mMovieDao.getMostPopularMoviesSize());
+
+            Log.i(LOG_TAG, "Read p99: " + (reads == 0 ? "-" : TimeUnit.NANOSECONDS.toMicros(
+                    percentile99(during, reads))) + " us over " + reads + " reads during a "
+                    + "write of " + WRITTEN_MOVIES + " movies taking "
+                    + TimeUnit.NANOSECONDS.toMillis(writeNanos) + " ms");
+            assertTrue(reads + " reads done during write " + w, reads >= MIN_READS_DURING_WRITE);
+        }
+    }
+
+    /**
+     * Reads one of the stored movies as the detail screen does.
+     *
+     * @return The time the read took
+     */
+    private long timeRead(int i) {
+        int[] ids = {1 + i % STORED_MOVIES};
+        long start = System.nanoTime();
+        assertEquals(1, mMovieDao.getMoviesByIds(ids).size());
+        return System.nanoTime() - start;
+    }
+
+    private static long percentile99(long[] nanos, int count) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.99) - 1];
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.db.SupportSQLiteProgram;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the most popular movies of some genres are read from the genre and popularity
+ * index, one genre after the other, and measures the read on tables of 10,000 and 100,000
+ * movies, for one genre held by every movie and for three genres.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GenreQueryBenchmark {
+    private static final String LOG_TAG = GenreQueryBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "genre-query-benchmark";
+    private static final String GENRE_INDEX = "index_movie_genre_genre_id_popularity_movie_id";
+    private static final int[] TABLE_SIZES = {10_000, 100_000};
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final int TOP_MOVIES = 50;
+    private static final int READS = 51;
+    // Every test movie is in genre 28, see TestMovies
+    private static final int[] ONE_GENRE = {28};
+    private static final int[] THREE_GENRES = {12, 13, 85};
+
+    private Context mContext;
+    private MovieDatabase mDatabase;
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = MovieDatabase.create(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void moviesInGenres_areReadFromTheGenreIndex() {
+        fill(TABLE_SIZES[0]);
+        String plan = explain(MovieDao.mostPopularMoviesInGenresQuery(THREE_GENRES, TOP_MOVIES));
+
+        // One index search per genre, then the movies looked up by id
+        assertEquals(plan, THREE_GENRES.length, plan.split(GENRE_INDEX, -1).length - 1);
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+        // No table scanned, only the few rows found per genre are sorted, once
+        for (String step : plan.split("\n")) {
+            assertFalse(plan, step.contains("SCAN") && step.contains("movie"));
+        }
+        assertEquals(plan, 1, plan.split("TEMP B-TREE", -1).length - 1);
+    }
+
+    @Test
+    public void moviesInGenres_areTheMostPopularOfTheGenres() {
+        fill(TABLE_SIZES[0]);
+
+        assertEquals(bruteForceIds(THREE_GENRES), ids(THREE_GENRES));
+        assertEquals(bruteForceIds(ONE_GENRE), ids(ONE_GENRE));
+    }
+
+    @Test
+    public void moviesInGenres_benchmark() {
+        int stored = 0;
+        for (int tableSize : TABLE_SIZES) {
+            fill(tableSize - stored);
+            stored = tableSize;
+
+            long oneGenreNanos = medianReadNanos(ONE_GENRE);
+            long threeGenresNanos = medianReadNanos(THREE_GENRES);
+            Log.i(LOG_TAG, tableSize + " movies: top " + TOP_MOVIES + " of one genre read in "
+                    + TimeUnit.NANOSECONDS.toMicros(oneGenreNanos) + " us, of three genres in "
+                    + TimeUnit.NANOSECONDS.toMicros(threeGenresNanos) + " us");
+        }
+    }
+
+    /**
+     * @return The median time of a read of the most popular movies of the genres
+     */
+    private long medianReadNanos(int[] genreIds) {
+        long[] nanos = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long start = System.nanoTime();
+            assertEquals(TOP_MOVIES, ids(genreIds).size());
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[READS / 2];
+    }
+
+    private List<Integer> ids(int[] genreIds) {
+        return ids(MovieDao.mostPopularMoviesInGenresQuery(genreIds, TOP_MOVIES));
+    }
+
+    /**
+     * @return The ids of the most popular movies of the genres, joining all of their links
+     */
+    private List<Integer> bruteForceIds(int[] genreIds) {
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT movie.id FROM movie "
+                + "INNER JOIN movie_genre ON movie_genre.movie_id = movie.id WHERE genre_id IN (");
+        for (int i = 0; i < genreIds.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(genreIds[i]);
+        }
+        sql.append(") ORDER BY movie.popularity DESC, movie.id DESC LIMIT ").append(TOP_MOVIES);
+        List<Integer> ids = new ArrayList<>();
+        try (Cursor cursor = mDatabase.query(sql.toString(), null)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+        return ids;
+    }
+
+    private List<Integer> ids(SupportSQLiteQuery query) {
+        List<Integer> ids = new ArrayList<>();
+        try (Cursor cursor = mDatabase.query(query)) {
+            int id = cursor.getColumnIndexOrThrow("id");
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(id));
+            }
+        }
+        return ids;
+    }
+
+    private void fill(int count) {
+        MovieDao movieDao = mDatabase.MoviesDao();
+        for (int inserted = 0; inserted < count; inserted += INSERT_BATCH_SIZE) {
+            int batchSize = Math.min(INSERT_BATCH_SIZE, count - inserted);
+            movieDao.bulkInsert(TestMovies.create(mNextId, batchSize));
+            mNextId += batchSize;
+        }
+    }
+
+    /**
+     * @return The plan of the query, with its arguments bound
+     */
+    private String explain(final SupportSQLiteQuery query) {
+        SupportSQLiteQuery explain = new SupportSQLiteQuery() {
+            @Override
+            public String getSql() {
+                return "EXPLAIN QUERY PLAN " + query.getSql();
+            }
+
+            @Override
+            public void bindTo(SupportSQLiteProgram statement) {
+                query.bindTo(statement);
+            }
+
+            @Override
+            public int getArgCount() {
+                return query.getArgCount();
+            }
+        };
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = mDatabase.query(explain)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        Log.i(LOG_TAG, query.getSql() + "\n" + plan);
+        return plan.toString();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the most popular movies are read from the popularity index, and logs how the
+ * top-N read and the trim of the least popular movies grow with the table, up to 100,000 movies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieDaoBenchmark {
+    private static final String LOG_TAG = MovieDaoBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "movie-dao-benchmark";
+    private static final int[] TABLE_SIZES = {1000, 10_000, 100_000};
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final int TOP_MOVIES = 60;
+    private static final int TRIMMED_MOVIES = 1000;
+    private static final int READS = 51;
+
+    private Context mContext;
+    private MovieDatabase mDatabase;
+    private MovieDao mMovieDao;
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = MovieDatabase.create(mContext, DATABASE_NAME);
+        mMovieDao = mDatabase.MoviesDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void mostPopularMovies_areReadFromThePopularityIndex() {
+        fill(TABLE_SIZES[0]);
+        String plan = explain("SELECT id, title, popularity, poster_path, original_language, "
+                + "original_title, vote_count FROM movie ORDER BY popularity DESC, id DESC "
+                + "LIMIT " + TOP_MOVIES);
+
+        assertTrue(plan, plan.contains("index_movie_popularity"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void trim_readsTheKeptMoviesFromThePopularityIndex() {
+        fill(TABLE_SIZES[0]);
+        String plan = explain("DELETE FROM movie WHERE id NOT IN (SELECT id FROM movie "
+                + "ORDER BY popularity DESC LIMIT " + TRIMMED_MOVIES + ")");
+
+        assertTrue(plan, plan.contains("index_movie_popularity"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void topAndTrim_benchmark() {
+        int stored = 0;
+        for (int tableSize : TABLE_SIZES) {
+            fill(tableSize - stored);
+            stored = tableSize;
+            assertEquals(tableSize, mMovieDao.getMostPopularMoviesSize());
+
+            long readNanos = medianReadNanos();
+
+            long start = System.nanoTime();
+            mDatabase.runInTransaction(() ->
+                    mMovieDao.deleteOldPopularMovies(tableSize - TRIMMED_MOVIES));
+            long trimNanos = System.nanoTime() - start;
+            assertEquals(tableSize - TRIMMED_MOVIES, mMovieDao.getMostPopularMoviesSize());
+            // Back to the size of the table, for the next one to grow from it
+            fill(TRIMMED_MOVIES);
+
+            Log.i(LOG_TAG, tableSize + " movies: top " + TOP_MOVIES + " read in "
+                    + TimeUnit.NANOSECONDS.toMicros(readNanos) + " us, "
+                    + TRIMMED_MOVIES + " least popular trimmed in "
+                    + TimeUnit.NANOSECONDS.toMicros(trimNanos) + " us");
+        }
+    }
+
+    /**
+     * @return The median time of a read of the first page of the most popular movies
+     */
+    private long medianReadNanos() {
+        long[] nanos = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long start = System.nanoTime();
+            // Starting after the most popular movie possible, this is the top-N read
+            assertEquals(TOP_MOVIES, mMovieDao.getMostPopularMoviesAfter(Float.MAX_VALUE,
+                    Integer.MAX_VALUE, TOP_MOVIES).size());
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[READS / 2];
+    }
+
+    private void fill(int count) {
+        for (int inserted = 0; inserted < count; inserted += INSERT_BATCH_SIZE) {
+            int batchSize = Math.min(INSERT_BATCH_SIZE, count - inserted);
+            mMovieDao.bulkInsert(TestMovies.create(mNextId, batchSize));
+            mNextId += batchSize;
+        }
+    }
+
+    private String explain(String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = mDatabase.query("EXPLAIN QUERY PLAN " + sql, null)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        Log.i(LOG_TAG, sql + "\n" + plan);
+        return plan.toString();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.db.SupportSQLiteProgram;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the movie search reads the full-text index and looks the movies up by id, and
+ * measures its latency on tables of 10,000 and 100,000 movies, for a title typed by the user and
+ * for a word found in every overview.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieSearchBenchmark {
+    private static final String LOG_TAG = MovieSearchBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "movie-search-benchmark";
+    private static final int[] TABLE_SIZES = {10_000, 100_000};
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final int RESULTS = 50;
+    private static final int SEARCHES = 21;
+    // Matches "Movie 4242" and, in the larger table, "Movie 42420" to "Movie 42429"
+    private static final String TITLE = "movie 4242";
+    // In the overview of every movie
+    private static final String COMMON_WORD = "heroes";
+
+    private Context mContext;
+    private MovieDatabase mDatabase;
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = MovieDatabase.create(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void search_readsTheFullTextIndex() {
+        fill(TABLE_SIZES[0]);
+        SupportSQLiteQuery search = MovieDao.searchQuery(TITLE, RESULTS);
+        String plan = explain(search);
+
+        assertTrue(plan, plan.contains(MovieDatabase.MOVIE_SEARCH_TABLE + " VIRTUAL TABLE"));
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    @Test
+    public void search_findsTitlesFirst_thenByPopularity() {
+        fill(TABLE_SIZES[0]);
+
+        assertEquals(Arrays.asList("Movie 4242"), titles(MovieDao.searchQuery(TITLE, RESULTS)));
+
+        List<Float> popularities = new ArrayList<>();
+        try (Cursor cursor = mDatabase.query(MovieDao.searchQuery(COMMON_WORD, RESULTS))) {
+            while (cursor.moveToNext()) {
+                popularities.add(cursor.getFloat(cursor.getColumnIndexOrThrow("popularity")));
+            }
+        }
+        assertEquals(RESULTS, popularities.size());
+        for (int i = 1; i < popularities.size(); i++) {
+            assertTrue(popularities.toString(), popularities.get(i - 1) >= popularities.get(i));
+        }
+    }
+
+    @Test
+    public void search_benchmark() {
+        int stored = 0;
+        for (int tableSize : TABLE_SIZES) {
+            fill(tableSize - stored);
+            stored = tableSize;
+
+            long titleNanos = medianSearchNanos(TITLE);
+            long commonNanos = medianSearchNanos(COMMON_WORD);
+            Log.i(LOG_TAG, tableSize + " movies: \"" + TITLE + "\" found in "
+                    + TimeUnit.NANOSECONDS.toMicros(titleNanos) + " us, \"" + COMMON_WORD
+                    + "\" in " + TimeUnit.NANOSECONDS.toMicros(commonNanos) + " us");
+        }
+        assertEquals(11, titles(MovieDao.searchQuery(TITLE, RESULTS)).size());
+    }
+
+    /**
+     * @return The median time of a search, reading every movie found
+     */
+    private long medianSearchNanos(String text) {
+        long[] nanos = new long[SEARCHES];
+        for (int i = 0; i < SEARCHES; i++) {
+            long start = System.nanoTime();
+            titles(MovieDao.searchQuery(text, RESULTS));
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[SEARCHES / 2];
+    }
+
+    private List<String> titles(SupportSQLiteQuery search) {
+        List<String> titles = new ArrayList<>();
+        try (Cursor cursor = mDatabase.query(search)) {
+            int title = cursor.getColumnIndexOrThrow("title");
+            while (cursor.moveToNext()) {
+                titles.add(cursor.getString(title));
+            }
+        }
+        return titles;
+    }
+
+    private void fill(int count) {
+        MovieDao movieDao = mDatabase.MoviesDao();
+        for (int inserted = 0; inserted < count; inserted += INSERT_BATCH_SIZE) {
+            int batchSize = Math.min(INSERT_BATCH_SIZE, count - inserted);
+            movieDao.bulkInsert(TestMovies.create(mNextId, batchSize));
+            mNextId += batchSize;
+        }
+    }
+
+    /**
+     * @return The plan of the search, with the arguments bound as the app binds them
+     */
+    private String explain(final SupportSQLiteQuery search) {
+        StringBuilder plan = new StringBuilder();
+        SupportSQLiteQuery explain = new SupportSQLiteQuery() {
+            @Override
+            public String getSql() {
+                return "EXPLAIN QUERY PLAN " + search.getSql();
+            }
+
+            @Override
+            public void bindTo(SupportSQLiteProgram statement) {
+                search.bindTo(statement);
+            }
+
+            @Override
+            public int getArgCount() {
+                return search.getArgCount();
+            }
+        };
+        try (Cursor cursor = mDatabase.query(explain)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        Log.i(LOG_TAG, search.getSql() + "\n" + plan);
+        return plan.toString();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+/**
+ * Makes movies shaped like the ones of a sync, for the instrumented tests and benchmarks.
+ */
+public final class TestMovies {
+
+    // Spreads the popularities over the table rather than following the ids
+    private static final int POPULARITY_STEP = 7919;
+    private static final int POPULARITY_RANGE = 100_000;
+
+    private TestMovies() {
+    }
+
+    /**
+     * @param firstId The id of the first movie, the others following it
+     * @param count   The number of movies
+     * @return The movies, with distinct titles and popularities spread over the ids
+     */
+    public static MovieEntry[] create(int firstId, int count) {
+        MovieEntry[] movies = new MovieEntry[count];
+        for (int i = 0; i < count; i++) {
+            int id = firstId + i;
+            float popularity = (float) ((long) id * POPULARITY_STEP % POPULARITY_RANGE) / 100;
+            movies[i] = new MovieEntry(id, "false", 100 + id % 5000, 5 + id % 50 / 10f,
+                    "Movie " + id, popularity, "/poster" + id + ".jpg", "en",
+                    "Original movie " + id, new int[]{28, 12 + id % 7, 80 + id % 19},
+                    "/backdrop" + id + ".jpg", "false", "The overview of movie " + id
+                    + ", which goes on for a couple of sentences as the real ones do. It tells "
+                    + "who the heroes are and what they are up against, without the ending.",
+                    "2018-06-0" + (id % 9 + 1));
+            movies[i].setLast_fetched(System.currentTimeMillis());
+        }
+        return movies;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb;
+
+import org.junit.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the cost of getting the instance of a {@link Singleton} once created.
+ */
+public class SingletonBenchmark {
+    private static final Logger LOG = Logger.getLogger(SingletonBenchmark.class.getSimpleName());
+
+    private static final int GETS = 10_000_000;
+
+    @Test
+    public void get_uncontended_benchmark() {
+        Singleton<Object> singleton = new Singleton<>();
+        Object instance = singleton.get(Object::new);
+        long sink = 0;
+        // Warm up, then measure
+        for (int i = 0; i < GETS; i++) {
+            if (singleton.get(Object::new) == instance) sink++;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < GETS; i++) {
+            if (singleton.get(Object::new) == instance) sink++;
+        }
+        double nanos = (double) (System.nanoTime() - start) / GETS;
+        LOG.info(String.format("%.2f", nanos) + " ns per uncontended get (" + sink + ")");
+        assertEquals(2L * GETS, sink);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.firebase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Measures the mapping and sorting of a snapshot of 5,000 movies read from Firebase against the
+ * former sort, which compared the popularities as text.
+ */
+public class FirebaseMoviesLiveDataBenchmark {
+    private static final Logger LOG =
+            Logger.getLogger(FirebaseMoviesLiveDataBenchmark.class.getSimpleName());
+
+    private static final int SNAPSHOT_MOVIES = 5000;
+    private static final int SNAPSHOTS = 200;
+
+    @Test
+    public void toSortedList_benchmark() {
+        List<FirebaseListMovieEntry> snapshot = new ArrayList<>(SNAPSHOT_MOVIES);
+        for (int id = 1; id <= SNAPSHOT_MOVIES; id++) {
+            snapshot.add(FirebaseMoviesLiveDataTest.movie(id, (id * 7919 % 100_000) / 100f));
+        }
+        long sink = 0;
+        // Warm up, then measure
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            sink += FirebaseMoviesLiveData.toSortedList(snapshot).get(0).getId()
+                    + sortAsText(snapshot).get(0).mId;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            sink += FirebaseMoviesLiveData.toSortedList(snapshot).get(0).getId();
+        }
+        long numeric = (System.nanoTime() - start) / SNAPSHOTS;
+        start = System.nanoTime();
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            sink += sortAsText(snapshot).get(0).mId;
+        }
+        long text = (System.nanoTime() - start) / SNAPSHOTS;
+
+        LOG.info(numeric / 1000 + " us to map and sort " + SNAPSHOT_MOVIES + " movies, "
+                + text / 1000 + " us with the popularities as text (" + sink + ")");
+    }
+
+    /**
+     * Maps and sorts the snapshot the way it was done before the numbers were primitives.
+     */
+    private static List<TextMovie> sortAsText(List<FirebaseListMovieEntry> snapshot) {
+        List<TextMovie> movies = new ArrayList<>(snapshot.size());
+        for (FirebaseListMovieEntry firebaseMovie : snapshot) {
+            movies.add(new TextMovie(firebaseMovie));
+        }
+        Collections.sort(movies, (o1, o2) -> o2.mPopularity.compareTo(o1.mPopularity));
+        return movies;
+    }
+
+    /**
+     * A list entry as it was, every value being text.
+     */
+    private static class TextMovie {
+        final int mId;
+        final String mPopularity;
+        final String mVoteCount;
+        final String mTitle;
+
+        TextMovie(FirebaseListMovieEntry firebaseMovie) {
+            mId = firebaseMovie.getId();
+            mPopularity = String.valueOf(firebaseMovie.getPopularity());
+            mVoteCount = String.valueOf(firebaseMovie.getVote_count());
+            mTitle = firebaseMovie.getTitle();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import com.mfarssac.moviedb.AllocationMeter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares {@link MovieDbJsonParser} with parsing a page the way it was done before it
+ * streamed, see {@link MovieDbJsonParserTest#parseAsTree(String)}, in bytes allocated and in
+ * time per page.
+ */
+public class MovieDbJsonParserBenchmark {
+    private static final Logger LOG =
+            Logger.getLogger(MovieDbJsonParserBenchmark.class.getSimpleName());
+
+    private static final int[] PAGE_SIZES = {20, 500};
+    private static final int BENCHMARK_MOVIES = 20_000;
+
+    private final MovieDbJsonParser mParser = new MovieDbJsonParser();
+
+    @Test
+    public void parse_allocatesLessThanTreeParsing() throws IOException {
+        assumeTrue(AllocationMeter.isSupported());
+        for (int pageSize : PAGE_SIZES) {
+            String json = MovieDbJsonParserTest.page(pageSize);
+            // Warm up, so that class loading isn't measured
+            mParser.parse(json);
+            MovieDbJsonParserTest.parseAsTree(json);
+
+            long start = AllocationMeter.allocatedBytes();
+            mParser.parse(json);
+            long streamed = AllocationMeter.allocatedBytes() - start;
+            start = AllocationMeter.allocatedBytes();
+            MovieDbJsonParserTest.parseAsTree(json);
+            long tree = AllocationMeter.allocatedBytes() - start;
+
+            LOG.info(streamed + " bytes allocated per page of " + pageSize + " movies, "
+                    + tree + " when parsed as a tree");
+            assertTrue(streamed + " >= " + tree, streamed < tree);
+        }
+    }
+
+    @Test
+    public void parse_benchmark() throws IOException {
+        for (int pageSize : PAGE_SIZES) {
+            String json = MovieDbJsonParserTest.page(pageSize);
+            int pages = BENCHMARK_MOVIES / pageSize;
+            long sink = 0;
+            // Warm up, then measure
+            for (int i = 0; i < pages; i++) {
+                sink += mParser.parse(json).getMovies().length
+                        + MovieDbJsonParserTest.parseAsTree(json).length;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                sink += mParser.parse(json).getMovies().length;
+            }
+            long streamed = (System.nanoTime() - start) / pages;
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                sink += MovieDbJsonParserTest.parseAsTree(json).length;
+            }
+            long tree = (System.nanoTime() - start) / pages;
+
+            LOG.info(streamed / 1000 + " us per page of " + pageSize + " movies, "
+                    + tree / 1000 + " us when parsed as a tree (" + sink + ")");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import com.mfarssac.moviedb.AllocationMeter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Scanner;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares {@link NetworkUtils#getResponseFromHttpUrl}, which streams the body into the parser,
+ * with reading the whole body into a String with a {@link Scanner} before parsing it, as was
+ * done before, in bytes allocated and in time per page fetched from a stub server.
+ */
+public class NetworkUtilsBenchmark {
+    private static final Logger LOG =
+            Logger.getLogger(NetworkUtilsBenchmark.class.getSimpleName());
+
+    private static final int[] PAGE_SIZES = {20, 500, 5000};
+    private static final int BENCHMARK_MOVIES = 20_000;
+
+    private StubPageServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubPageServer(PAGE_SIZES);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void getResponse_allocatesLessThanReadingAString() throws IOException {
+        assumeTrue(AllocationMeter.isSupported());
+        for (int pageSize : PAGE_SIZES) {
+            // Warm up, so that class loading isn't measured
+            mServer.fetch(pageSize, false);
+            fetchAsString(pageSize);
+
+            long start = AllocationMeter.allocatedBytes();
+            mServer.fetch(pageSize, false);
+            long streamed = AllocationMeter.allocatedBytes() - start;
+            start = AllocationMeter.allocatedBytes();
+            fetchAsString(pageSize);
+            long read = AllocationMeter.allocatedBytes() - start;
+
+            LOG.info(streamed + " bytes allocated per page of " + pageSize + " movies, " + read
+                    + " when read into a String first");
+            assertTrue(streamed + " >= " + read, streamed < read);
+        }
+    }
+
+    @Test
+    public void getResponse_benchmark() throws IOException {
+        for (int pageSize : PAGE_SIZES) {
+            int pages = Math.max(10, BENCHMARK_MOVIES / pageSize);
+            long sink = 0;
+            // Warm up, then measure
+            for (int i = 0; i < pages; i++) {
+                sink += mServer.fetch(pageSize, false).body.getMovies().length
+                        + fetchAsString(pageSize).getMovies().length;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                sink += mServer.fetch(pageSize, false).body.getMovies().length;
+            }
+            long streamed = (System.nanoTime() - start) / pages;
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                sink += mServer.fetch(pageSize, true).body.getMovies().length;
+            }
+            long gzipped = (System.nanoTime() - start) / pages;
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                sink += fetchAsString(pageSize).getMovies().length;
+            }
+            long read = (System.nanoTime() - start) / pages;
+
+            LOG.info(streamed / 1000 + " us per page of " + pageSize + " movies, "
+                    + gzipped / 1000 + " us gzipped, " + read / 1000
+                    + " us when read into a String first (" + sink + ")");
+        }
+    }
+
+    /**
+     * Fetches the page the way it was done before the body was streamed.
+     */
+    private MovieDbResponse fetchAsString(int pageSize) throws IOException {
+        HttpURLConnection urlConnection =
+                (HttpURLConnection) mServer.url(pageSize, false).openConnection();
+        try (InputStream in = urlConnection.getInputStream()) {
+            Scanner scanner = new Scanner(in);
+            scanner.useDelimiter("\\A");
+            return new MovieDbJsonParser().parse(scanner.next());
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import com.mfarssac.moviedb.AllocationMeter;
+
+import org.junit.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the bytes allocated and the time taken by a {@link GenreIdsConverter} round trip.
+ */
+public class GenreIdsConverterBenchmark {
+    private static final Logger LOG =
+            Logger.getLogger(GenreIdsConverterBenchmark.class.getSimpleName());
+
+    private static final int ROUND_TRIPS = 10_000;
+
+    /**
+     * A conversion allocates the blob or the array it returns, and a fixed number of buffer
+     * wrappers, never anything per genre.
+     */
+    @Test
+    public void conversion_allocationDoesNotGrowPerGenre() {
+        assumeTrue(AllocationMeter.isSupported());
+        int[] few = new int[2];
+        int[] many = new int[200];
+        byte[] fewBlob = GenreIdsConverter.genreIdsToBlob(few);
+        byte[] manyBlob = GenreIdsConverter.genreIdsToBlob(many);
+
+        long fewBytes = allocatedPerRoundTrip(few, fewBlob);
+        long manyBytes = allocatedPerRoundTrip(many, manyBlob);
+        // The results grow by 2 * 4 bytes per genre, the rest must not grow
+        long overhead = (manyBytes - fewBytes) - 2L * Integer.BYTES * (many.length - few.length);
+        LOG.info(fewBytes + " bytes per round trip of " + few.length + " genres, " + manyBytes
+                + " of " + many.length);
+        assertTrue("Overhead per genre: " + overhead, overhead < 64);
+    }
+
+    @Test
+    public void conversion_benchmark() {
+        int[] genreIds = {28, 12, 16, 35, 80};
+        long sink = 0;
+        // Warm up, then measure
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            sink += GenreIdsConverter.blobToGenreIds(GenreIdsConverter.genreIdsToBlob(genreIds))[0];
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            sink += GenreIdsConverter.blobToGenreIds(GenreIdsConverter.genreIdsToBlob(genreIds))[0];
+        }
+        long nanos = (System.nanoTime() - start) / ROUND_TRIPS;
+        LOG.info(nanos + " ns per round trip of " + genreIds.length + " genres (" + sink + ")");
+    }
+
+    private static long allocatedPerRoundTrip(int[] genreIds, byte[] blob) {
+        // Warm up, so that only the steady state is measured
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            GenreIdsConverter.genreIdsToBlob(genreIds);
+            GenreIdsConverter.blobToGenreIds(blob);
+        }
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            GenreIdsConverter.genreIdsToBlob(genreIds);
+            GenreIdsConverter.blobToGenreIds(blob);
+        }
+        return (AllocationMeter.allocatedBytes() - before) / ROUND_TRIPS;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import com.mfarssac.moviedb.AllocationMeter;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the bytes a list of 10,000 {@link ListMovieEntry} takes against the former rows,
+ * which kept every value as text and carried the overview.
+ */
+public class ListMovieEntryBenchmark {
+    private static final Logger LOG =
+            Logger.getLogger(ListMovieEntryBenchmark.class.getSimpleName());
+
+    private static final int ROWS = 10_000;
+
+    @Test
+    public void bytesPerRow_comparedWithTextRows() {
+        assumeTrue(AllocationMeter.isSupported());
+        // The values read from the database, decoded into new Strings for each row as a cursor
+        // does, so that the rows share nothing
+        byte[][][] values = new byte[ROWS][][];
+        for (int i = 0; i < ROWS; i++) {
+            values[i] = utf8("Movie " + i, String.valueOf(500f - i / 100f),
+                    "/poster" + i + ".jpg", "en", "Original movie " + i,
+                    "The overview of movie " + i + ", which goes on for a couple of sentences "
+                            + "as the real ones do. It tells who the heroes are and what they "
+                            + "are up against, without the ending.",
+                    String.valueOf(100 + i));
+        }
+        // Warm up, so that class loading isn't measured
+        compactRows(values);
+        textRows(values);
+
+        long start = AllocationMeter.allocatedBytes();
+        ListMovieEntry[] compact = compactRows(values);
+        long compactBytes = (AllocationMeter.allocatedBytes() - start) / ROWS;
+        start = AllocationMeter.allocatedBytes();
+        TextRow[] text = textRows(values);
+        long textBytes = (AllocationMeter.allocatedBytes() - start) / ROWS;
+
+        LOG.info(compactBytes + " bytes per row over " + compact.length + " rows, "
+                + textBytes + " per row of text over " + text.length + " rows");
+        assertTrue(compactBytes + " >= " + textBytes + " / 2", compactBytes * 2 < textBytes);
+    }
+
+    private static ListMovieEntry[] compactRows(byte[][][] values) {
+        ListMovieEntry[] rows = new ListMovieEntry[values.length];
+        for (int i = 0; i < values.length; i++) {
+            byte[][] row = values[i];
+            // Numbers are read as such, the overview isn't read at all
+            rows[i] = new ListMovieEntry(i, text(row[0]), 500f - i / 100f, text(row[2]),
+                    text(row[3]), text(row[4]), 100 + i);
+        }
+        return rows;
+    }
+
+    private static TextRow[] textRows(byte[][][] values) {
+        TextRow[] rows = new TextRow[values.length];
+        for (int i = 0; i < values.length; i++) {
+            byte[][] row = values[i];
+            rows[i] = new TextRow(i, text(row[0]), text(row[1]), text(row[2]), text(row[3]),
+                    text(row[4]), text(row[5]), text(row[6]));
+        }
+        return rows;
+    }
+
+    private static byte[][] utf8(String... values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static String text(byte[] utf8) {
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A list row as it was.
+     */
+    private static class TextRow {
+        final int mId;
+        final String mTitle;
+        final String mPopularity;
+        final String mPosterPath;
+        final String mOriginalLanguage;
+        final String mOriginalTitle;
+        final String mOverview;
+        final String mVoteCount;
+
+        TextRow(int id, String title, String popularity, String posterPath,
+                String originalLanguage, String originalTitle, String overview,
+                String voteCount) {
+            mId = id;
+            mTitle = title;
+            mPopularity = popularity;
+            mPosterPath = posterPath;
+            mOriginalLanguage = originalLanguage;
+            mOriginalTitle = originalTitle;
+            mOverview = overview;
+            mVoteCount = voteCount;
+        }
+    }
+}
@@ -23,53 +23,86 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Global executor pools for the whole application.
  * <p>
  * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
- * webservice requests).
+ * webservice requests). Database writes go through a single writer thread while reads use a pool
+ * of their own: the database runs in write-ahead logging mode, so reads neither wait for a long
+ * write transaction nor queue behind it. The disk and network pools are bounded
+ * {@link MeteredExecutor}s: within a pool, work submitted with
+ * {@link MeteredExecutor#PRIORITY_UI} goes ahead of background work, and the metrics of the pools
+ * tell which one is the bottleneck.
  */
 public class AppExecutors {
 
+    // Pool sizes. A single writer thread keeps all the database writes serialized.
+    private static final int DISK_WRITE_THREADS = 1;
+    private static final int DISK_WRITE_QUEUE_CAPACITY = 256;
+    private static final int DISK_READ_THREADS = 3;
+    private static final int DISK_READ_QUEUE_CAPACITY = 256;
+    private static final int NETWORK_IO_THREADS = 3;
+    private static final int NETWORK_IO_QUEUE_CAPACITY = 64;
+
     // For Singleton instantiation
-    private static final Object LOCK = new Object();
-    private static AppExecutors sInstance;
-    private final Executor diskIO;
+    private static final Singleton<AppExecutors> INSTANCE = new Singleton<>();
+    private final MeteredExecutor diskWrite;
+    private final MeteredExecutor diskRead;
     private final Executor mainThread;
-    private final Executor networkIO;
+    private final MeteredExecutor networkIO;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
-        this.diskIO = diskIO;
+    private AppExecutors(MeteredExecutor diskWrite, MeteredExecutor diskRead,
+                         MeteredExecutor networkIO, Executor mainThread) {
+        this.diskWrite = diskWrite;
+        this.diskRead = diskRead;
         this.networkIO = networkIO;
         this.mainThread = mainThread;
     }
 
     public static AppExecutors getInstance() {
-        if (sInstance == null) {
-            synchronized (LOCK) {
-                sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
-                        Executors.newFixedThreadPool(3),
-                        new MainThreadExecutor());
-            }
-        }
-        return sInstance;
+        // No write should be silently dropped: a full write queue is a bug which must surface.
+        // Reads and downloads are submitted from the main thread, where a full queue must not
+        // crash the UI: they are discarded, and counted as rejected. The ones which must run
+        // are submitted with tryExecute, and handle not running.
+        return INSTANCE.get(() -> new AppExecutors(
+                new MeteredExecutor("disk-write", DISK_WRITE_THREADS,
+                        DISK_WRITE_QUEUE_CAPACITY, new ThreadPoolExecutor.AbortPolicy()),
+                new MeteredExecutor("disk-read", DISK_READ_THREADS,
+                        DISK_READ_QUEUE_CAPACITY, new ThreadPoolExecutor.DiscardPolicy()),
+                new MeteredExecutor("network-io", NETWORK_IO_THREADS,
+                        NETWORK_IO_QUEUE_CAPACITY, new ThreadPoolExecutor.DiscardPolicy()),
+                new MainThreadExecutor()));
+    }
+
+    public MeteredExecutor diskWrite() {
+        return diskWrite;
     }
 
-    public Executor diskIO() {
-        return diskIO;
+    public MeteredExecutor diskRead() {
+        return diskRead;
     }
 
     public Executor mainThread() {
         return mainThread;
     }
 
-    public Executor networkIO() {
+    public MeteredExecutor networkIO() {
         return networkIO;
     }
 
+    /**
+     * @return A snapshot of the queue depth, wait and run times of the background pools
+     */
+    public List<MeteredExecutor.Metrics> getMetrics() {
+        return Arrays.asList(diskWrite.getMetrics(), diskRead.getMetrics(),
+                networkIO.getMetrics());
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
@@ -78,4 +111,4 @@ public class AppExecutors {
             mainThreadHandler.post(command);
         }
     }
-}
\ No newline at end of file
+}
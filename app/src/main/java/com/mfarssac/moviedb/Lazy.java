@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread safe holder of a value which is only created the first time it is needed, so that
+ * creating an object doesn't create everything it may use.
+ *
+ * @param <T> The type of the value
+ */
+public final class Lazy<T> {
+
+    private final Supplier<T> mFactory;
+    private final Singleton<T> mValue = new Singleton<>();
+
+    public Lazy(Supplier<T> factory) {
+        mFactory = factory;
+    }
+
+    public T get() {
+        return mValue.get(mFactory);
+    }
+}
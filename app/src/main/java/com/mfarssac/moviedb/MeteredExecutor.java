@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+
+package com.mfarssac.moviedb;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool with a bounded queue, priority lanes and metrics.
+ * <p>
+ * Tasks with a higher priority are taken from the queue first, tasks of the same priority run in
+ * the order they were submitted. When the queue is full, tasks are handed to the rejection policy
+ * given at construction time, except for the best-effort ones, submitted with
+ * {@link #tryExecute}, which are dropped and counted. The time tasks spend waiting in the queue and
+ * running is recorded and can be read with {@link #getMetrics()}.
+ */
+public class MeteredExecutor implements Executor {
+
+    // Work that the user is waiting for, like reading what is about to be displayed
+    public static final int PRIORITY_UI = 10;
+    // Work nobody is waiting for, like storing the result of a sync
+    public static final int PRIORITY_BACKGROUND = 0;
+
+    private final String mName;
+    private final ThreadPoolExecutor mPool;
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+    private final AtomicLong mTotalRunNanos = new AtomicLong();
+    private final AtomicLong mMaxRunNanos = new AtomicLong();
+
+    /**
+     * @param name             Name of the pool, used for its threads and its metrics
+     * @param threads          Number of threads of the pool
+     * @param queueCapacity    Number of tasks which can wait for a thread
+     * @param rejectionHandler What to do with the tasks submitted when the queue is full
+     */
+    public MeteredExecutor(String name, int threads, int queueCapacity,
+                           RejectedExecutionHandler rejectionHandler) {
+        mName = name;
+        mPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new BoundedPriorityQueue(queueCapacity), new NamedThreadFactory(name),
+                (runnable, executor) -> {
+                    PrioritizedTask task = (PrioritizedTask) runnable;
+                    if (task.mBestEffort) {
+                        task.mDropped = true;
+                        mDropped.incrementAndGet();
+                        return;
+                    }
+                    mRejected.incrementAndGet();
+                    rejectionHandler.rejectedExecution(runnable, executor);
+                }) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                PrioritizedTask task = (PrioritizedTask) runnable;
+                task.mStartNanos = System.nanoTime();
+                long wait = task.mStartNanos - task.mSubmitNanos;
+                mTotalWaitNanos.addAndGet(wait);
+                updateMax(mMaxWaitNanos, wait);
+            }
+
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable throwable) {
+                long run = System.nanoTime() - ((PrioritizedTask) runnable).mStartNanos;
+                mTotalRunNanos.addAndGet(run);
+                updateMax(mMaxRunNanos, run);
+                mCompleted.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Runs the command with {@link #PRIORITY_BACKGROUND}.
+     */
+    @Override
+    public void execute(@NonNull Runnable command) {
+        execute(command, PRIORITY_BACKGROUND);
+    }
+
+    public void execute(@NonNull Runnable command, int priority) {
+        mPool.execute(new PrioritizedTask(command, priority, mSequence.getAndIncrement(), false));
+    }
+
+    /**
+     * Runs the command unless the queue is full, in which case it is dropped and counted, without
+     * going through the rejection policy. For work which may be skipped, or whose caller handles
+     * it not running: this never throws, whatever the policy.
+     *
+     * @return Whether the command was queued
+     */
+    public boolean tryExecute(@NonNull Runnable command, int priority) {
+        PrioritizedTask task =
+                new PrioritizedTask(command, priority, mSequence.getAndIncrement(), true);
+        mPool.execute(task);
+        return !task.mDropped;
+    }
+
+    /**
+     * @return An {@link Executor} running its commands on this pool with the given priority
+     */
+    public Executor withPriority(int priority) {
+        return command -> execute(command, priority);
+    }
+
+    public Metrics getMetrics() {
+        long completed = mCompleted.get();
+        return new Metrics(mName, mPool.getQueue().size(), mPool.getActiveCount(), completed,
+                mRejected.get(), mDropped.get(),
+                completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(mTotalWaitNanos.get() / completed),
+                TimeUnit.NANOSECONDS.toMicros(mMaxWaitNanos.get()),
+                completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(mTotalRunNanos.get() / completed),
+                TimeUnit.NANOSECONDS.toMicros(mMaxRunNanos.get()));
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+        } while (value > current && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * Snapshot of the activity of a {@link MeteredExecutor}. Times are in microseconds.
+     */
+    public static final class Metrics {
+        public final String name;
+        public final int queueDepth;
+        public final int activeThreads;
+        public final long completedTasks;
+        public final long rejectedTasks;
+        // Best-effort tasks dropped as the queue was full
+        public final long droppedTasks;
+        public final long averageWaitMicros;
+        public final long maxWaitMicros;
+        public final long averageRunMicros;
+        public final long maxRunMicros;
+
+        Metrics(String name, int queueDepth, int activeThreads, long completedTasks,
+                long rejectedTasks, long droppedTasks, long averageWaitMicros, long maxWaitMicros,
+                long averageRunMicros, long maxRunMicros) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.activeThreads = activeThreads;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.droppedTasks = droppedTasks;
+            this.averageWaitMicros = averageWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.averageRunMicros = averageRunMicros;
+            this.maxRunMicros = maxRunMicros;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [queue = " + queueDepth + ", active = " + activeThreads
+                    + ", completed = " + completedTasks + ", rejected = " + rejectedTasks
+                    + ", dropped = " + droppedTasks
+                    + ", wait avg/max = " + averageWaitMicros + "/" + maxWaitMicros + "us"
+                    + ", run avg/max = " + averageRunMicros + "/" + maxRunMicros + "us]";
+        }
+    }
+
+    /**
+     * Queue entry ordering the commands by priority, then by submission order.
+     */
+    private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable mCommand;
+        private final int mPriority;
+        private final long mSequence;
+        private final boolean mBestEffort;
+        private final long mSubmitNanos = System.nanoTime();
+        private long mStartNanos;
+        // Set by the submitting thread itself, when the queue is full
+        private boolean mDropped;
+
+        PrioritizedTask(Runnable command, int priority, long sequence, boolean bestEffort) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+            mBestEffort = bestEffort;
+        }
+
+        @Override
+        public void run() {
+            mCommand.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull PrioritizedTask other) {
+            if (mPriority != other.mPriority) return mPriority > other.mPriority ? -1 : 1;
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    /**
+     * {@link PriorityBlockingQueue} refusing new elements once it holds the given number of them,
+     * which makes the pool apply its rejection policy.
+     */
+    private static final class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+        private final int mCapacity;
+
+        BoundedPriorityQueue(int capacity) {
+            mCapacity = capacity;
+        }
+
+        @Override
+        public synchronized boolean offer(Runnable runnable) {
+            // Only offers make the queue grow, so checking the size under this lock is enough
+            return size() < mCapacity && super.offer(runnable);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, mCapacity - size());
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb;
+
+import java.util.function.Supplier;
+
+/**
+ * Holder of the single instance of a class, created by the first caller of {@link #get}. Racing
+ * callers block until it is created and all get the same instance, which is safely published:
+ * once created, getting it is a volatile read, without any locking.
+ * <p>
+ * Used as {@code private static final Singleton<Foo> INSTANCE = new Singleton<>();}, with
+ * {@code getInstance()} returning {@code INSTANCE.get(() -> new Foo(...))}.
+ *
+ * @param <T> The type of the instance
+ */
+public final class Singleton<T> {
+
+    private volatile T mInstance;
+
+    /**
+     * @param factory Creates the instance. Only called once, and not after the instance exists.
+     * @return The instance
+     */
+    public T get(Supplier<? extends T> factory) {
+        T instance = mInstance;
+        if (instance == null) {
+            synchronized (this) {
+                // Another caller may have created it while this one was waiting for the lock
+                instance = mInstance;
+                if (instance == null) {
+                    instance = factory.get();
+                    mInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+}
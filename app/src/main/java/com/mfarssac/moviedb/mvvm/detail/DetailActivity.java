@@ -24,9 +24,6 @@ import com.mfarssac.moviedb.R;
 import com.mfarssac.moviedb.databinding.ActivityDetailBinding;
 import com.mfarssac.moviedb.repository.room.MovieEntry;
 import com.mfarssac.moviedb.utils.InjectorUtils;
-import com.squareup.picasso.Picasso;
-
-import static com.mfarssac.moviedb.repository.room.MovieDatabase.MOVIEDB_API_IMAGES_URL;
 
 /**
  * Displays a popular movie
@@ -78,9 +75,8 @@ public class DetailActivity extends AppCompatActivity {
         int iconWidth = MOVIE_BIG_ICON_WIDTH;
         int iconHeight =MOVIE_BIG_ICON_HEIGHT;
 
-        Picasso.get()
-                .load(MOVIEDB_API_IMAGES_URL + movieEntry.getPoster_path())
-                .resize(iconWidth,iconHeight)
+        InjectorUtils.providePosterLoader(this)
+                .load(movieEntry.getPoster_path(), iconWidth, iconHeight)
                 .into(mDetailBinding.primaryInfo.movieIcon);
 
         /****************
@@ -106,7 +102,7 @@ public class DetailActivity extends AppCompatActivity {
          * Movie popularity *
          ***********************/
 
-        String popularity = movieEntry.getPopularity();
+        String popularity = String.valueOf(movieEntry.getPopularity());
         /* Use the movieId to obtain the proper description */
         mDetailBinding.extraDetails.popularity.setText(popularity);
 
@@ -114,7 +110,7 @@ public class DetailActivity extends AppCompatActivity {
          * Movie vote average  *
          ***********************/
 
-        String vote_average = movieEntry.getVote_average();
+        String vote_average = String.valueOf(movieEntry.getVote_average());
         /* Use the movieId to obtain the proper description */
         mDetailBinding.extraDetails.voteAverage.setText(vote_average);
 
@@ -122,7 +118,7 @@ public class DetailActivity extends AppCompatActivity {
          * Movie vote count    *
          ***********************/
 
-        String vote_count = movieEntry.getVote_count();
+        String vote_count = String.valueOf(movieEntry.getVote_count());
         /* Use the movieId to obtain the proper description */
         mDetailBinding.extraDetails.voteCount.setText(vote_count);
     }
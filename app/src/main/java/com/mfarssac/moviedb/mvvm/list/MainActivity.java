@@ -21,31 +21,20 @@ package com.mfarssac.moviedb.mvvm.list;
 import android.arch.lifecycle.ViewModelProviders;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Trace;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.ProgressBar;
 
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.GenericTypeIndicator;
-import com.google.firebase.database.ValueEventListener;
 import com.mfarssac.moviedb.R;
 import com.mfarssac.moviedb.mvvm.detail.DetailActivity;
-import com.mfarssac.moviedb.repository.firebase.FirebaseListMovieEntry;
-import com.mfarssac.moviedb.repository.room.ListMovieEntry;
 import com.mfarssac.moviedb.utils.InjectorUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 
 /**
- * Displays a list of the 50 most popular movies
+ * Displays the list of most popular movies, loading more of them as the user scrolls
  */
 public class MainActivity extends AppCompatActivity implements
         MovieAdapter.MovieAdapterOnItemClickHandler {
@@ -55,9 +44,12 @@ public class MainActivity extends AppCompatActivity implements
     private int mPosition = RecyclerView.NO_POSITION;
     private ProgressBar mLoadingIndicator;
     private MainActivityViewModel mViewModel;
+    private MoviePrefetcher mPrefetcher;
+    private boolean mFullyDrawn;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        Trace.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_movie);
 
@@ -114,61 +106,54 @@ public class MainActivity extends AppCompatActivity implements
          */
         mMovieAdapter = new MovieAdapter(this, this);
 
-        FirebaseDatabase firebaseDatabase = FirebaseDatabase.getInstance();
-        DatabaseReference myRef = firebaseDatabase.getReference();
-        myRef.child("movies");
+        /* Setting the adapter attaches it to the RecyclerView in our layout. */
+        mRecyclerView.setAdapter(mMovieAdapter);
+        MainViewModelFactory factory = InjectorUtils.provideMainActivityViewModelFactory(this.getApplicationContext());
+        mViewModel = ViewModelProviders.of(this, factory).get(MainActivityViewModel.class);
 
-        myRef.addValueEventListener(new ValueEventListener() {
+        // Read the pages of movies the user scrolls towards, in either direction
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-
-                List<ListMovieEntry> movieEntries = new ArrayList<ListMovieEntry>();
-
-                GenericTypeIndicator<List<FirebaseListMovieEntry>> t = new GenericTypeIndicator<List<FirebaseListMovieEntry>>() {};
-                List<FirebaseListMovieEntry> firebaseMovieEntries = dataSnapshot.getValue(t);
-
-                // Map Firebase Database returned MovieEntries into MovieDB Entries
-                if (firebaseMovieEntries !=null) {
-                    firebaseMovieEntries.forEach(fireBaseMovie -> movieEntries.add(new ListMovieEntry(fireBaseMovie)));
-
-                    // We sort the movies by popularity in descending order
-                    Collections.sort(movieEntries, ((o1, o2) -> o2.getPopularity().compareTo(o1.getPopularity())));
-
-                    mMovieAdapter.swapMovies(movieEntries);
-                    if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
-                    mRecyclerView.smoothScrollToPosition(mPosition);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy != 0) {
+                    mViewModel.loadAround(layoutManager.findFirstVisibleItemPosition(),
+                            layoutManager.findLastVisibleItemPosition());
                 }
-
-                if (movieEntries != null && movieEntries.size() != 0)
-                    showMovieDataView();
-                else
-                    showLoading();
-
-            }
-
-            @Override
-            public void onCancelled(DatabaseError databaseError) {
-
             }
         });
 
-        /* Setting the adapter attaches it to the RecyclerView in our layout. */
-        mRecyclerView.setAdapter(mMovieAdapter);
-        MainViewModelFactory factory = InjectorUtils.provideMainActivityViewModelFactory(this.getApplicationContext());
-        mViewModel = ViewModelProviders.of(this, factory).get(MainActivityViewModel.class);
+        // Warm the details and posters of the movies about to scroll into view
+        mPrefetcher = new MoviePrefetcher(mMovieAdapter, layoutManager, mViewModel,
+                InjectorUtils.providePosterLoader(this), MoviePrefetcher.DEFAULT_BUDGET);
+        mMovieAdapter.setPrefetcher(mPrefetcher);
+        mRecyclerView.addOnScrollListener(mPrefetcher);
 
         mViewModel.getMovieEntries().observe(this, movieEntries -> {
             mMovieAdapter.swapMovies(movieEntries);
-            if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
-            mRecyclerView.smoothScrollToPosition(mPosition);
-
-            myRef.setValue(movieEntries);
+            // Only scroll to the top of the list on the first load, not when pages are appended
+            if (mPosition == RecyclerView.NO_POSITION) {
+                mPosition = 0;
+                mRecyclerView.smoothScrollToPosition(mPosition);
+            }
 
-            if (movieEntries != null && movieEntries.size() != 0)
+            if (movieEntries != null && movieEntries.size() != 0) {
                 showMovieDataView();
-            else
+                // Startup ends when the first movies are shown, logged as "Fully drawn"
+                if (!mFullyDrawn) {
+                    mFullyDrawn = true;
+                    reportFullyDrawn();
+                }
+            } else {
                 showLoading();
+            }
         });
+        Trace.endSection();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPrefetcher.cancel();
     }
 
     /**
@@ -20,6 +20,7 @@
 package com.mfarssac.moviedb.mvvm.list;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
 import android.arch.lifecycle.ViewModel;
 
 import com.mfarssac.moviedb.repository.MoviesRepository;
@@ -27,23 +28,123 @@ import com.mfarssac.moviedb.repository.network.MoviesNetworkDataSource;
 import com.mfarssac.moviedb.repository.room.ListMovieEntry;
 
 import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * {@link ViewModel} for {@link MainActivity}
+ * <p>
+ * The list is loaded in pages. The most popular movies are observed from the database, so they
+ * follow every sync, and further pages are only read, with a keyset query, once the user scrolls
+ * close to the end of what has been loaded so far. Only a window of these pages is kept, see
+ * {@link MoviePageWindow}, so the list takes the same memory however deep the user scrolls.
+ * <p>
+ * Only the most popular movies are mirrored in Firebase, which every client shares: the pages
+ * read below them are this client's own, and are appended after the merge, right after the last
+ * movie of the merged top of the list.
  */
 class MainActivityViewModel extends ViewModel {
 
+    // Number of movies read from the database each time the user nears the end of the list
+    static final int PAGE_SIZE = 20;
+    // How many not yet displayed movies should remain loaded below the last visible one
+    static final int PREFETCH_DISTANCE = 10;
+    // Number of pages kept loaded below the top of the list
+    static final int MAX_PAGES = 5;
+
     private final MoviesRepository mRepository;
-    private final LiveData<List<ListMovieEntry>> mMovies;
+    private final MediatorLiveData<List<ListMovieEntry>> mMovies;
+
+    // Observed top of the list, merged with Firebase, and the pages read below it
+    private final MoviePageWindow mWindow = new MoviePageWindow(
+            MoviesNetworkDataSource.MAX_POPULAR_MOVIES_NUMBER, PAGE_SIZE, MAX_PAGES,
+            PREFETCH_DISTANCE);
+    private LiveData<List<ListMovieEntry>> mPendingPage;
 
     public MainActivityViewModel(MoviesRepository repository) {
         mRepository = repository;
-        mMovies = mRepository.getMostPopularMovies(MoviesNetworkDataSource.MAX_POPULAR_MOVIES_NUMBER);
+        mMovies = new MediatorLiveData<>();
+        mMovies.addSource(mRepository.mirrorMovies(mRepository.getMostPopularMovies(
+                MoviesNetworkDataSource.MAX_POPULAR_MOVIES_NUMBER)), this::onTopMoviesChanged);
     }
 
+    /**
+     * @return The list of movies, whose top is also mirrored in and updated from Firebase
+     */
     public LiveData<List<ListMovieEntry>> getMovieEntries() {
         return mMovies;
     }
 
+    /**
+     * Reads the page of movies the user is scrolling towards, when the given positions get close
+     * to either end of what is loaded.
+     *
+     * @param firstVisiblePosition The position of the first movie on screen
+     * @param lastVisiblePosition  The position of the last movie on screen
+     */
+    void loadAround(int firstVisiblePosition, int lastVisiblePosition) {
+        mWindow.setVisible(firstVisiblePosition, lastVisiblePosition);
+        if (mPendingPage != null) return;
+
+        switch (mWindow.toLoad()) {
+            case RELOAD:
+                int count = mWindow.getPagedSize();
+                load(mWindow.hasGapAbove()
+                                ? mRepository.getMostPopularMoviesFrom(
+                                        mWindow.getFirstPagedMovie(), count)
+                                : mRepository.getMostPopularMoviesAfter(
+                                        mWindow.getLastTopMovie(), count),
+                        movies -> mWindow.onReload(movies, count));
+                break;
+            case NEXT:
+                load(mRepository.getMostPopularMoviesAfter(mWindow.getLastMovie(), PAGE_SIZE),
+                        mWindow::onNextPage);
+                break;
+            case PREVIOUS:
+                load(mRepository.getMostPopularMoviesBefore(mWindow.getFirstPagedMovie(),
+                        PAGE_SIZE), mWindow::onPreviousPage);
+                break;
+            case NONE:
+                break;
+        }
+    }
+
+    /**
+     * Reads ahead the details of the movies the user is about to scroll to.
+     *
+     * @param ids       The ids of the movies
+     * @param cancelled Tells whether the read is no longer wanted
+     */
+    void prefetchMovies(int[] ids, BooleanSupplier cancelled) {
+        mRepository.prefetchMovies(ids, cancelled);
+    }
+
+    private void onTopMoviesChanged(List<ListMovieEntry> topMovies) {
+        // A page read against the previous top of the list could now overlap with it
+        if (mPendingPage != null) {
+            mMovies.removeSource(mPendingPage);
+            mPendingPage = null;
+        }
+        // Shown straight away, the pages below are read again once the user scrolls
+        mWindow.setTop(topMovies);
+        publish();
+    }
+
+    private void load(LiveData<List<ListMovieEntry>> page,
+                      Consumer<List<ListMovieEntry>> onLoaded) {
+        mPendingPage = page;
+        mMovies.addSource(page, movies -> {
+            mMovies.removeSource(page);
+            mPendingPage = null;
+            // Not read, the readers being too busy: asked for again on the next scroll
+            if (movies == null) return;
 
+            onLoaded.accept(movies);
+            publish();
+        });
+    }
+
+    private void publish() {
+        mMovies.setValue(mWindow.getMovies());
+    }
 }
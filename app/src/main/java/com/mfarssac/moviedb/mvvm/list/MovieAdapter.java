@@ -20,6 +20,7 @@ package com.mfarssac.moviedb.mvvm.list;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
 import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -29,9 +30,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.mfarssac.moviedb.R;
+import com.mfarssac.moviedb.repository.images.PosterLoader;
 import com.mfarssac.moviedb.repository.room.ListMovieEntry;
 import com.mfarssac.moviedb.repository.room.MovieEntry;
-import com.squareup.picasso.Picasso;
+import com.mfarssac.moviedb.utils.InjectorUtils;
+import com.squareup.picasso.RequestCreator;
 
 import java.util.List;
 
@@ -39,7 +42,6 @@ import static com.mfarssac.moviedb.mvvm.detail.DetailActivity.MOVIE_BIG_ICON_HEI
 import static com.mfarssac.moviedb.mvvm.detail.DetailActivity.MOVIE_BIG_ICON_WIDTH;
 import static com.mfarssac.moviedb.mvvm.detail.DetailActivity.MOVIE_SMALL_ICON_HEIGHT;
 import static com.mfarssac.moviedb.mvvm.detail.DetailActivity.MOVIE_SMALL_ICON_WIDTH;
-import static com.mfarssac.moviedb.repository.room.MovieDatabase.MOVIEDB_API_IMAGES_URL;
 
 /**
  * Exposes a list of movies from a list of {@link MovieEntry} to a {@link RecyclerView}.
@@ -49,6 +51,20 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
     private static final int VIEW_TYPE_MOST_POPULAR = 0;
     private static final int VIEW_TYPE_POPULAR_MOVIE = 1;
 
+    // Tells which rows of two lists of movies are the same movie, and whether they look the same
+    static final DiffUtil.ItemCallback<ListMovieEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ListMovieEntry>() {
+                @Override
+                public boolean areItemsTheSame(ListMovieEntry oldMovie, ListMovieEntry newMovie) {
+                    return oldMovie.getId() == newMovie.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(ListMovieEntry oldMovie, ListMovieEntry newMovie) {
+                    return oldMovie.equals(newMovie);
+                }
+            };
+
     // The context we use to utility methods, app resources and layout inflaters
     private final Context mContext;
 
@@ -66,7 +82,10 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
      * adapter by accessing boolean resources.
      */
     private final boolean mOneMovieLayout;
-    private List<ListMovieEntry> mMovies;
+    private final PosterLoader mPosterLoader;
+    private final AsyncListDiffer<ListMovieEntry> mDiffer =
+            new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private MoviePrefetcher mPrefetcher;
 
     /**
      * Creates a MovieAdapter.
@@ -79,6 +98,7 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
         mContext = context;
         mClickHandler = clickHandler;
         mOneMovieLayout = mContext.getResources().getBoolean(R.bool.use_oneMovie_layout);
+        mPosterLoader = InjectorUtils.providePosterLoader(context);
     }
 
     /**
@@ -113,12 +133,30 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
      */
     @Override
     public void onBindViewHolder(MovieAdapterViewHolder movieAdapterViewHolder, int position) {
-        ListMovieEntry currentMovie = mMovies.get(position);
+        ListMovieEntry currentMovie = getMovie(position);
+        if (mPrefetcher != null) mPrefetcher.onMovieBound(currentMovie.getId());
 
         /**************************
          * Movie title *
          **************************/
 
+        loadPoster(position).into(movieAdapterViewHolder.iconView);
+
+        String movie_title = currentMovie.getTitle();
+        movieAdapterViewHolder.movieTitle.setText(movie_title);
+        String popularity = String.valueOf(currentMovie.getPopularity());
+        movieAdapterViewHolder.popularity.setText(popularity);
+
+    }
+
+    /**
+     * Builds the poster request of the movie at the given position. The same request is used to
+     * display the poster and to prefetch it, so that a prefetched poster is found in the cache.
+     *
+     * @param position The position of the item within the adapter's data set.
+     * @return The request of the poster
+     */
+    RequestCreator loadPoster(int position) {
         int iconWidth = MOVIE_SMALL_ICON_WIDTH;
         int iconHeight = MOVIE_SMALL_ICON_HEIGHT;
 
@@ -127,16 +165,22 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
             iconHeight = MOVIE_BIG_ICON_HEIGHT;
         }
 
-        Picasso.get()
-                .load(MOVIEDB_API_IMAGES_URL + currentMovie.getPoster_path())
-                .resize(iconWidth,iconHeight)
-                .into(movieAdapterViewHolder.iconView);
+        return mPosterLoader.load(getMovie(position).getPoster_path(), iconWidth, iconHeight);
+    }
 
-        String movie_title = currentMovie.getTitle();
-        movieAdapterViewHolder.movieTitle.setText(movie_title);
-        String popularity = currentMovie.getPopularity();
-        movieAdapterViewHolder.popularity.setText(popularity);
+    /**
+     * @param position The position of the item within the adapter's data set.
+     * @return The movie displayed at the given position
+     */
+    ListMovieEntry getMovie(int position) {
+        return mDiffer.getCurrentList().get(position);
+    }
 
+    /**
+     * Sets the prefetcher to tell about the movies being displayed.
+     */
+    void setPrefetcher(MoviePrefetcher prefetcher) {
+        mPrefetcher = prefetcher;
     }
 
     /**
@@ -147,8 +191,7 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
      */
     @Override
     public int getItemCount() {
-        if (null == mMovies) return 0;
-        return mMovies.size();
+        return mDiffer.getCurrentList().size();
     }
 
     /**
@@ -170,46 +213,15 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
 
     /**
      * Swaps the list used by the MovieAdapter for its movie data. This method is called by
-     * {@link MainActivity} after a load has finished. When this method is called, we assume we have
-     * a new set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * {@link MainActivity} after a load has finished. The first list is displayed straight away;
+     * later ones are compared with the displayed list on a background thread, and only the rows
+     * which changed are then updated on the main thread. When a newer list is swapped in before
+     * the comparison has finished, the older list is dropped.
      *
      * @param newMoviesList the new list of movies to use as MovieAdapter's data source
      */
     void swapMovies(final List<ListMovieEntry> newMoviesList) {
-        // If there was no movie data, then recreate all of the list
-        if (mMovies == null) {
-            mMovies = newMoviesList;
-            notifyDataSetChanged();
-        } else {
-
-            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return mMovies.size();
-                }
-
-                @Override
-                public int getNewListSize() {
-                    return newMoviesList.size();
-                }
-
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mMovies.get(oldItemPosition).getId() ==
-                            newMoviesList.get(newItemPosition).getId();
-                }
-
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    ListMovieEntry newMovie = newMoviesList.get(newItemPosition);
-                    ListMovieEntry oldMovie = mMovies.get(oldItemPosition);
-                    return (newMovie.getOriginal_title().equals(oldMovie.getOriginal_title()))
-                            && (newMovie.getPopularity()==oldMovie.getPopularity());
-                }
-            });
-            mMovies = newMoviesList;
-            result.dispatchUpdatesTo(this);
-        }
+        mDiffer.submitList(newMoviesList);
     }
 
     /**
@@ -276,7 +288,7 @@ class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapterViewHol
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            int id = mMovies.get(adapterPosition).getId();
+            int id = getMovie(adapterPosition).getId();
             mClickHandler.onItemClick(id);
         }
     }
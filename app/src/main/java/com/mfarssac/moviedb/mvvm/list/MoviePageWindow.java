@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.list;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The movies of the list: the observed top of the list, followed by a window of the pages read
+ * below it as the user scrolls. The window holds a bounded number of pages, the ones farthest
+ * from the screen being dropped, so the list takes the same memory however deep the user
+ * scrolls. The pages dropped above the window are read again, ranked right before its first
+ * movie, when the user scrolls back up; the ones dropped below are read again like any next page.
+ * <p>
+ * When the top of the list changes, the window is kept as it is until the user scrolls, and is
+ * then read again in one query. Must be used from a single thread.
+ */
+class MoviePageWindow {
+
+    /**
+     * What should be read next, see {@link #toLoad()}.
+     */
+    enum Load {
+        NONE,
+        // The whole window, which was read before the top of the list changed
+        RELOAD,
+        // The page ranked right after the last movie loaded
+        NEXT,
+        // The page ranked right before the window, dropped earlier
+        PREVIOUS
+    }
+
+    private final int mTopSize;
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final int mPrefetchDistance;
+
+    private List<ListMovieEntry> mTop = Collections.emptyList();
+    private final ArrayDeque<List<ListMovieEntry>> mPages = new ArrayDeque<>();
+    private int mPagedSize;
+    // Pages were dropped between the top of the list and the window
+    private boolean mGapAbove;
+    private boolean mEndReached;
+    // The top of the list changed since the window was read
+    private boolean mStale;
+    private int mFirstVisible;
+    private int mLastVisible;
+
+    /**
+     * @param topSize          The number of movies asked for the top of the list
+     * @param pageSize         The number of movies of a page
+     * @param maxPages         The number of pages kept below the top of the list
+     * @param prefetchDistance How many movies should remain loaded around the visible ones
+     */
+    MoviePageWindow(int topSize, int pageSize, int maxPages, int prefetchDistance) {
+        mTopSize = topSize;
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        mPrefetchDistance = prefetchDistance;
+    }
+
+    void setTop(List<ListMovieEntry> top) {
+        mTop = top;
+        if (top.size() < mTopSize) {
+            // Every movie is in the top of the list
+            mPages.clear();
+            mPagedSize = 0;
+            mGapAbove = false;
+            mEndReached = true;
+            mStale = false;
+        } else if (mPages.isEmpty()) {
+            mEndReached = false;
+        } else {
+            mStale = true;
+        }
+    }
+
+    /**
+     * @param firstVisiblePosition The position of the first movie on screen
+     * @param lastVisiblePosition  The position of the last movie on screen
+     */
+    void setVisible(int firstVisiblePosition, int lastVisiblePosition) {
+        mFirstVisible = firstVisiblePosition;
+        mLastVisible = lastVisiblePosition;
+    }
+
+    /**
+     * @return What should be read for the movies around the screen to be loaded
+     */
+    Load toLoad() {
+        if (mTop.isEmpty()) return Load.NONE;
+        if (mStale) return Load.RELOAD;
+        if (!mEndReached && mLastVisible >= size() - mPrefetchDistance) return Load.NEXT;
+        if (mGapAbove && mFirstVisible <= mTop.size() + mPrefetchDistance) return Load.PREVIOUS;
+        return Load.NONE;
+    }
+
+    /**
+     * @return The movie the next page is ranked right after
+     */
+    ListMovieEntry getLastMovie() {
+        List<ListMovieEntry> last = mPages.isEmpty() ? mTop : mPages.getLast();
+        return last.get(last.size() - 1);
+    }
+
+    /**
+     * @return The last movie of the top of the list, which the window is read after when it
+     * follows it
+     */
+    ListMovieEntry getLastTopMovie() {
+        return mTop.get(mTop.size() - 1);
+    }
+
+    /**
+     * @return The first movie of the window, which the previous page is ranked right before, and
+     * which the window is read again from when pages were dropped above it
+     */
+    ListMovieEntry getFirstPagedMovie() {
+        return mPages.getFirst().get(0);
+    }
+
+    /**
+     * @return The number of movies in the window
+     */
+    int getPagedSize() {
+        return mPagedSize;
+    }
+
+    boolean hasGapAbove() {
+        return mGapAbove;
+    }
+
+    void onNextPage(List<ListMovieEntry> page) {
+        mEndReached = page.size() < mPageSize;
+        if (!page.isEmpty()) {
+            mPages.addLast(page);
+            mPagedSize += page.size();
+        }
+        trim();
+    }
+
+    void onPreviousPage(List<ListMovieEntry> page) {
+        // Only a full page of movies ranked below the top of the list may leave a gap above it
+        List<ListMovieEntry> belowTop = new ArrayList<>(page.size());
+        ListMovieEntry lastTop = getLastTopMovie();
+        for (ListMovieEntry movie : page) {
+            if (isRankedAfter(movie, lastTop)) belowTop.add(movie);
+        }
+        mGapAbove = belowTop.size() == mPageSize;
+        if (!belowTop.isEmpty()) {
+            mPages.addFirst(belowTop);
+            mPagedSize += belowTop.size();
+            // The movies on screen moved down
+            mFirstVisible += belowTop.size();
+            mLastVisible += belowTop.size();
+        }
+        trim();
+    }
+
+    /**
+     * @param movies The movies of the window read again, as many as it held
+     * @param count  The number of movies read
+     */
+    void onReload(List<ListMovieEntry> movies, int count) {
+        mStale = false;
+        mEndReached = movies.size() < count;
+        mPages.clear();
+        mPagedSize = movies.size();
+        for (int start = 0; start < movies.size(); start += mPageSize) {
+            mPages.addLast(new ArrayList<>(
+                    movies.subList(start, Math.min(start + mPageSize, movies.size()))));
+        }
+    }
+
+    /**
+     * @return The movies to display, without those of the window which are also in the top of
+     * the list, as happens until the window is read again after the top changed
+     */
+    List<ListMovieEntry> getMovies() {
+        List<ListMovieEntry> movies = new ArrayList<>(size());
+        movies.addAll(mTop);
+        Set<Integer> topIds = null;
+        if (mStale) {
+            topIds = new HashSet<>(mTop.size() * 2);
+            for (ListMovieEntry movie : mTop) {
+                topIds.add(movie.getId());
+            }
+        }
+        for (List<ListMovieEntry> page : mPages) {
+            for (ListMovieEntry movie : page) {
+                if (topIds == null || !topIds.contains(movie.getId())) movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    private int size() {
+        return mTop.size() + mPagedSize;
+    }
+
+    /**
+     * Drops the pages beyond the maximum, from the side of the window far from the screen.
+     */
+    private void trim() {
+        while (mPages.size() > mMaxPages) {
+            List<ListMovieEntry> first = mPages.getFirst();
+            List<ListMovieEntry> last = mPages.getLast();
+            if (mTop.size() + first.size() <= mFirstVisible - mPrefetchDistance) {
+                mPages.removeFirst();
+                mPagedSize -= first.size();
+                mGapAbove = true;
+                // The movies on screen moved up
+                mFirstVisible -= first.size();
+                mLastVisible -= first.size();
+            } else if (size() - last.size() > mLastVisible + mPrefetchDistance) {
+                mPages.removeLast();
+                mPagedSize -= last.size();
+                mEndReached = false;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a movie comes after another in the list, sorted by popularity then by id,
+     * both in descending order.
+     */
+    private static boolean isRankedAfter(ListMovieEntry movie, ListMovieEntry other) {
+        int byPopularity = Float.compare(other.getPopularity(), movie.getPopularity());
+        return byPopularity != 0 ? byPopularity > 0 : movie.getId() < other.getId();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.list;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+
+import com.mfarssac.moviedb.repository.images.PosterLoader;
+import com.squareup.picasso.Picasso;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Warms, in the direction the user is scrolling, the rows and posters of the movies about to
+ * come into view: their {@link com.mfarssac.moviedb.repository.room.MovieEntry} is read into the
+ * repository's memory cache, so that opening them doesn't wait for the database, and their poster
+ * is fetched into the poster caches, so that binding them doesn't wait for the network.
+ * <p>
+ * The faster the scroll, the further ahead movies are prefetched, up to a budget. Prefetches which
+ * haven't started yet are cancelled when the user turns around. Bound movies are counted as hits
+ * when they had been prefetched, and as misses otherwise. Must be used from the main thread.
+ */
+class MoviePrefetcher extends RecyclerView.OnScrollListener {
+    private static final String LOG_TAG = MoviePrefetcher.class.getSimpleName();
+
+    // Default maximum number of movies prefetched ahead of the visible ones
+    static final int DEFAULT_BUDGET = 10;
+    // Number of movies prefetched ahead however slow the scroll
+    private static final int MIN_LOOKAHEAD = 2;
+    // Number of frames of scrolling, at the current speed, the prefetched movies should cover
+    private static final int FRAMES_AHEAD = 10;
+
+    private final MovieAdapter mAdapter;
+    private final LinearLayoutManager mLayoutManager;
+    private final MainActivityViewModel mViewModel;
+    private final PosterLoader mPosterLoader;
+    private final int mBudget;
+
+    // Incremented on each turn around, prefetches issued under an older one are cancelled
+    private volatile int mGeneration;
+    private int mDirection;
+    private final Set<Integer> mPrefetched = new HashSet<>();
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param budget Maximum number of movies prefetched ahead of the visible ones
+     */
+    MoviePrefetcher(MovieAdapter adapter, LinearLayoutManager layoutManager,
+                    MainActivityViewModel viewModel, PosterLoader posterLoader, int budget) {
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+        mViewModel = viewModel;
+        mPosterLoader = posterLoader;
+        mBudget = budget;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) return;
+        int direction = dy > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            mDirection = direction;
+            cancel();
+        }
+
+        int edge = direction > 0
+                ? mLayoutManager.findLastVisibleItemPosition()
+                : mLayoutManager.findFirstVisibleItemPosition();
+        if (edge == RecyclerView.NO_POSITION) return;
+
+        int lookahead = Math.min(mBudget, MIN_LOOKAHEAD + itemsAhead(recyclerView, dy));
+        prefetch(edge + direction, direction, lookahead);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            Log.d(LOG_TAG, toString());
+        }
+    }
+
+    /**
+     * Counts the bound movie as a hit when it had been prefetched.
+     */
+    void onMovieBound(int id) {
+        if (mPrefetched.remove(id)) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+    }
+
+    /**
+     * Cancels the prefetches which haven't started yet.
+     */
+    void cancel() {
+        mGeneration++;
+        mPrefetched.clear();
+        mPosterLoader.cancelTag(this);
+    }
+
+    long getHitCount() {
+        return mHits;
+    }
+
+    long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return The number of movies scrolled through in {@link #FRAMES_AHEAD} frames at the speed
+     * of the last scroll
+     */
+    private int itemsAhead(RecyclerView recyclerView, int dy) {
+        View child = recyclerView.getChildAt(0);
+        if (child == null || child.getHeight() == 0) return 0;
+        return (int) Math.ceil(Math.abs(dy) * FRAMES_AHEAD / (float) child.getHeight());
+    }
+
+    private void prefetch(int first, int direction, int lookahead) {
+        int[] ids = new int[lookahead];
+        int count = 0;
+        for (int i = 0, position = first; i < lookahead; i++, position += direction) {
+            if (position < 0 || position >= mAdapter.getItemCount()) break;
+            int id = mAdapter.getMovie(position).getId();
+            if (!mPrefetched.add(id)) continue;
+
+            ids[count++] = id;
+            mAdapter.loadPoster(position)
+                    .priority(Picasso.Priority.LOW)
+                    .tag(this)
+                    .fetch();
+        }
+        if (count == 0) return;
+
+        int generation = mGeneration;
+        int[] newIds = new int[count];
+        System.arraycopy(ids, 0, newIds, 0, count);
+        mViewModel.prefetchMovies(newIds, () -> generation != mGeneration);
+    }
+
+    @Override
+    public String toString() {
+        return "MoviePrefetcher [budget = " + mBudget + ", hits = " + mHits
+                + ", misses = " + mMisses + "]";
+    }
+}
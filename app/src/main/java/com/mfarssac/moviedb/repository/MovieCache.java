@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Thread safe, size bounded cache of the {@link MovieEntry} most recently looked at, evicting the
+ * least recently used one when full. It counts its hits and misses.
+ */
+class MovieCache {
+
+    private final Map<Integer, MovieEntry> mMovies;
+    private long mHits;
+    private long mMisses;
+
+    MovieCache(final int maxSize) {
+        // Access ordered, so that iteration starts with the least recently used movie
+        mMovies = new LinkedHashMap<Integer, MovieEntry>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MovieEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return The cached movie, null if it isn't cached
+     */
+    synchronized MovieEntry get(int id) {
+        MovieEntry movie = mMovies.get(id);
+        if (movie != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return movie;
+    }
+
+    /**
+     * @return Whether the movie is cached. Neither counts as a hit or miss nor refreshes the
+     * movie's position in the eviction order.
+     */
+    synchronized boolean contains(int id) {
+        return mMovies.containsKey(id);
+    }
+
+    synchronized void put(MovieEntry movie) {
+        mMovies.put(movie.getId(), movie);
+    }
+
+    synchronized void remove(int id) {
+        mMovies.remove(id);
+    }
+
+    /**
+     * Replaces the cached movies with their newly stored version. Movies which aren't cached yet
+     * are not added, so a sync doesn't evict what the user has been looking at.
+     */
+    synchronized void refresh(MovieEntry[] movies) {
+        for (MovieEntry movie : movies) {
+            if (mMovies.containsKey(movie.getId())) {
+                mMovies.put(movie.getId(), movie);
+            }
+        }
+    }
+
+    /**
+     * Follows a stored movie through the cache. The returned {@link LiveData} holds the cached
+     * movie straight away, without waiting for the stored one; it then follows the stored movie,
+     * caching each version of it, and leaving out the ones equal to the movie it holds, such as
+     * the first read of a cached movie. Must be called from the main thread.
+     *
+     * @param id     The id of the movie
+     * @param stored {@link LiveData} of the stored movie, null when it isn't stored
+     * @return {@link LiveData} of the movie
+     */
+    LiveData<MovieEntry> follow(int id, LiveData<MovieEntry> stored) {
+        MediatorLiveData<MovieEntry> movie = new MediatorLiveData<>();
+        MovieEntry cachedMovie = get(id);
+        if (cachedMovie != null) {
+            movie.setValue(cachedMovie);
+        }
+
+        movie.addSource(stored, storedMovie -> {
+            if (storedMovie != null) {
+                put(storedMovie);
+            } else {
+                remove(id);
+            }
+            if (!Objects.equals(storedMovie, movie.getValue())) movie.setValue(storedMovie);
+        });
+        return movie;
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MovieCache [size = " + mMovies.size() + ", hits = " + mHits
+                + ", misses = " + mMisses + "]";
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.util.Log;
+
+import com.mfarssac.moviedb.repository.firebase.FirebaseMovieMirror;
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import java.util.List;
+
+/**
+ * Merges the list of movies read from the database with the one mirrored in Firebase, so that
+ * each change is published once whichever side it comes from.
+ * <p>
+ * Every list is identified by a hash of its contents. A database list equal to the published one
+ * is dropped. Otherwise it is published and its changes are mirrored to Firebase, which then sends
+ * the movies back: when they are the ones mirrored, or equal the published list, they are dropped
+ * too. Only the movies changed in Firebase by someone else are published from there.
+ * Must be used from the main thread.
+ */
+class MovieListMerger {
+    private static final String LOG_TAG = MovieListMerger.class.getSimpleName();
+
+    private final FirebaseMovieMirror mMirror;
+    private final MediatorLiveData<List<ListMovieEntry>> mMovies = new MediatorLiveData<>();
+
+    private List<ListMovieEntry> mPublished;
+    private int mPublishedHash;
+
+    private long mPublishedCount;
+    private long mRedundantCount;
+    private long mEchoCount;
+
+    MovieListMerger(LiveData<List<ListMovieEntry>> localMovies,
+                    LiveData<List<ListMovieEntry>> firebaseMovies,
+                    FirebaseMovieMirror mirror) {
+        mMirror = mirror;
+        mMovies.addSource(localMovies, this::onLocalMovies);
+        mMovies.addSource(firebaseMovies, this::onFirebaseMovies);
+    }
+
+    LiveData<List<ListMovieEntry>> getMovies() {
+        return mMovies;
+    }
+
+    private void onLocalMovies(List<ListMovieEntry> movies) {
+        int hash = movies.hashCode();
+        if (isSame(movies, hash, mPublished, mPublishedHash)) {
+            mRedundantCount++;
+            return;
+        }
+        publish(movies, hash);
+        mMirror.mirror(movies);
+    }
+
+    private void onFirebaseMovies(List<ListMovieEntry> movies) {
+        if (mMirror.isEcho(movies)) {
+            mEchoCount++;
+            return;
+        }
+
+        int hash = movies.hashCode();
+        if (isSame(movies, hash, mPublished, mPublishedHash)) {
+            mRedundantCount++;
+            return;
+        }
+        publish(movies, hash);
+    }
+
+    private void publish(List<ListMovieEntry> movies, int hash) {
+        mPublished = movies;
+        mPublishedHash = hash;
+        mPublishedCount++;
+        mMovies.setValue(movies);
+        Log.d(LOG_TAG, toString());
+    }
+
+    /**
+     * The hashes tell most different lists apart, the lists are only compared when they match.
+     */
+    private static boolean isSame(List<ListMovieEntry> movies, int hash,
+                                  List<ListMovieEntry> other, int otherHash) {
+        return other != null && hash == otherHash && movies.equals(other);
+    }
+
+    @Override
+    public String toString() {
+        return "MovieListMerger [published = " + mPublishedCount
+                + ", redundant dropped = " + mRedundantCount
+                + ", echoes dropped = " + mEchoCount + "]";
+    }
+}
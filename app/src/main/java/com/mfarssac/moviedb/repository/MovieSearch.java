@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+import com.mfarssac.moviedb.repository.room.MovieDao;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Follows the text typed by the user with the movies it matches. The database is only searched
+ * once the text has stopped changing for {@link #DEBOUNCE_MILLIS}, so that typing a word doesn't
+ * run a query per letter; the results then follow the database like any Room query. Must be used
+ * from the main thread.
+ */
+class MovieSearch {
+
+    // How long the text must stay the same before it is searched
+    static final long DEBOUNCE_MILLIS = 300;
+
+    private final MovieDao mMovieDao;
+    private final int mSize;
+    private final MediatorLiveData<List<ListMovieEntry>> mResults = new MediatorLiveData<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private Runnable mPendingSearch;
+    private String mSearchedText;
+    private LiveData<List<ListMovieEntry>> mSearch;
+
+    MovieSearch(MovieDao movieDao, LiveData<String> texts, int size) {
+        mMovieDao = movieDao;
+        mSize = size;
+        mResults.addSource(texts, this::onTextChanged);
+    }
+
+    LiveData<List<ListMovieEntry>> getResults() {
+        return mResults;
+    }
+
+    private void onTextChanged(String text) {
+        if (mPendingSearch != null) mHandler.removeCallbacks(mPendingSearch);
+        mPendingSearch = () -> search(text == null ? "" : text.trim());
+        mHandler.postDelayed(mPendingSearch, DEBOUNCE_MILLIS);
+    }
+
+    private void search(String text) {
+        mPendingSearch = null;
+        if (text.equals(mSearchedText)) return;
+        mSearchedText = text;
+
+        if (mSearch != null) mResults.removeSource(mSearch);
+        if (text.isEmpty()) {
+            mSearch = null;
+            mResults.setValue(Collections.emptyList());
+        } else {
+            mSearch = mMovieDao.searchMovies(text, mSize);
+            mResults.addSource(mSearch, mResults::setValue);
+        }
+    }
+}
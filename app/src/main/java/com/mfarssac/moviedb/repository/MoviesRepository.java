@@ -20,15 +20,29 @@
 package com.mfarssac.moviedb.repository;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
 import android.util.Log;
 
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
 import com.mfarssac.moviedb.AppExecutors;
+import com.mfarssac.moviedb.Lazy;
+import com.mfarssac.moviedb.MeteredExecutor;
+import com.mfarssac.moviedb.Singleton;
+import com.mfarssac.moviedb.repository.firebase.FirebaseMovieMirror;
+import com.mfarssac.moviedb.repository.firebase.FirebaseMoviesLiveData;
+import com.mfarssac.moviedb.repository.images.PosterStore;
+import com.mfarssac.moviedb.repository.network.MovieBatch;
 import com.mfarssac.moviedb.repository.network.MoviesNetworkDataSource;
 import com.mfarssac.moviedb.repository.room.ListMovieEntry;
 import com.mfarssac.moviedb.repository.room.MovieDao;
 import com.mfarssac.moviedb.repository.room.MovieEntry;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 /**
  * Handles data operations in the Movie DB App. Acts as a mediator between {@link MoviesNetworkDataSource}
@@ -37,51 +51,76 @@ import java.util.List;
 public class MoviesRepository {
     private static final String LOG_TAG = MoviesRepository.class.getSimpleName();
 
+    // Number of movies whose details are kept in memory
+    private static final int MOVIE_CACHE_SIZE = 100;
+
     // For Singleton instantiation
-    private static final Object LOCK = new Object();
-    private static MoviesRepository sInstance;
+    private static final Singleton<MoviesRepository> INSTANCE = new Singleton<>();
     private final MovieDao mMovieDao;
-    private final MoviesNetworkDataSource mMoviesNetworkDataSource;
+    // Not needed to display what is stored, so only created when first used
+    private final Lazy<MoviesNetworkDataSource> mMoviesNetworkDataSource;
     private final AppExecutors mExecutors;
+    private final Lazy<RetentionSweeper> mRetentionSweeper;
+    private final Lazy<PosterStore> mPosterStore;
+    private final MovieCache mMovieCache = new MovieCache(MOVIE_CACHE_SIZE);
     private boolean mInitialized = false;
 
     private MoviesRepository(MovieDao movieDao,
-                             MoviesNetworkDataSource moviesNetworkDataSource,
-                             AppExecutors executors) {
+                             Lazy<MoviesNetworkDataSource> moviesNetworkDataSource,
+                             AppExecutors executors,
+                             Lazy<RetentionSweeper> retentionSweeper,
+                             Lazy<PosterStore> posterStore) {
         mMovieDao = movieDao;
         mMoviesNetworkDataSource = moviesNetworkDataSource;
         mExecutors = executors;
+        mRetentionSweeper = retentionSweeper;
+        mPosterStore = posterStore;
 
-        // As long as the repository exists, observe the network LiveData.
-        // If that LiveData changes, update the database.
-        LiveData<MovieEntry[]> networkData = mMoviesNetworkDataSource.getCurrentMovies();
-        networkData.observeForever(newMoviesFromNetwork -> {
-            mExecutors.diskIO().execute(() -> {
-                // Deletes old historical data
-                Log.d(LOG_TAG, "Database size before insert ="+ mMovieDao.getMostPopularMoviesSize());
-                // Insert our new movie data into the Movie DB database
-                mMovieDao.bulkInsert(newMoviesFromNetwork);
-                Log.d(LOG_TAG, "New values inserted");
-                // To avoid that the DB grows without limit, we keep only the 50 most popular movies
-                deleteOldMovies();
-                Log.d(LOG_TAG, "Database size after delete = "+ mMovieDao.getMostPopularMoviesSize());
-                Log.d(LOG_TAG, "Old movies deleted");
-            });
-        });
+        // As long as the repository exists, observe the network LiveData. This is done once the
+        // main thread is done with what it is doing, such as creating the first activity, and
+        // works whichever thread creates the repository.
+        mExecutors.mainThread().execute(this::observeNetworkData);
     }
 
-    public synchronized static MoviesRepository getInstance(
-            MovieDao movieDao, MoviesNetworkDataSource moviesNetworkDataSource,
-            AppExecutors executors) {
+    public static MoviesRepository getInstance(
+            MovieDao movieDao, Lazy<MoviesNetworkDataSource> moviesNetworkDataSource,
+            AppExecutors executors, Lazy<RetentionSweeper> retentionSweeper,
+            Lazy<PosterStore> posterStore) {
         Log.d(LOG_TAG, "Getting the repository");
-        if (sInstance == null) {
-            synchronized (LOCK) {
-                sInstance = new MoviesRepository(movieDao, moviesNetworkDataSource,
-                        executors);
-                Log.d(LOG_TAG, "Made new repository");
-            }
-        }
-        return sInstance;
+        return INSTANCE.get(() -> {
+            Log.d(LOG_TAG, "Made new repository");
+            return new MoviesRepository(movieDao, moviesNetworkDataSource,
+                    executors, retentionSweeper, posterStore);
+        });
+    }
+
+    /**
+     * If the network LiveData changes, update the database.
+     */
+    private void observeNetworkData() {
+        LiveData<MovieBatch> networkData = mMoviesNetworkDataSource.get().getCurrentMovies();
+        networkData.observeForever(batch -> {
+            mExecutors.diskWrite().execute(() -> {
+                MovieEntry[] newMoviesFromNetwork = batch.getMovies();
+                // Insert our new movie data into the Movie DB database
+                long now = System.currentTimeMillis();
+                for (MovieEntry movie : newMoviesFromNetwork) {
+                    movie.setLast_fetched(now);
+                }
+                // The pages the movies come from are only recorded along with them. To avoid that
+                // the DB grows without limit, old movies are swept when due, in the same
+                // transaction.
+                mRetentionSweeper.get().writeAndSweep(() -> {
+                    mMovieDao.bulkInsert(newMoviesFromNetwork);
+                    mMoviesNetworkDataSource.get().storePageFetches(batch);
+                });
+                mMovieCache.refresh(newMoviesFromNetwork);
+                // Keep the posters of the stored movies for offline use, including those which
+                // could not be downloaded before
+                mPosterStore.get().storeMissing();
+                Log.d(LOG_TAG, "New values inserted, executors: " + mExecutors.getMetrics());
+            });
+        });
     }
 
     /**
@@ -96,10 +135,12 @@ public class MoviesRepository {
         mInitialized = true;
 
         // This method call triggers MovieDB to create its task to synchronize movie data
-        // periodically.
-        mMoviesNetworkDataSource.scheduleRecurringFetchMoviesSync();
+        // periodically. Scheduling talks to Google Play services, so it is kept off the caller's
+        // thread, usually the main one.
+        mExecutors.networkIO().execute(() ->
+                mMoviesNetworkDataSource.get().scheduleFetchMoviesSync());
 
-        mExecutors.diskIO().execute(() -> {
+        mExecutors.diskRead().execute(() -> {
             if (isFetchNeeded()) {
                 startFetchMoviesService();
             }
@@ -112,25 +153,136 @@ public class MoviesRepository {
 
     public LiveData<List<ListMovieEntry>> getMostPopularMovies(int size) {
         initializeData();
+        // Shown as soon as read, the posters wait for the stored ones to be known on their own
         return mMovieDao.getMostPopularMovies(size);
     }
 
+    /**
+     * Loads, off the main thread, the page of movies ranked right after the given one.
+     *
+     * @param after    The last movie already displayed
+     * @param pageSize The number of movies to load
+     * @return {@link LiveData} which receives the page once it has been read, or null when the
+     * readers are too busy to read it, in which case it should be asked for again later
+     */
+    public LiveData<List<ListMovieEntry>> getMostPopularMoviesAfter(ListMovieEntry after,
+                                                                    int pageSize) {
+        return readPage(() -> mMovieDao.getMostPopularMoviesAfter(after.getPopularity(),
+                after.getId(), pageSize));
+    }
 
+    /**
+     * Loads, off the main thread, the page of movies starting with the given one.
+     *
+     * @param first    The first movie of the page
+     * @param pageSize The number of movies to load
+     * @return {@link LiveData} which receives the page, see {@link #getMostPopularMoviesAfter}
+     */
+    public LiveData<List<ListMovieEntry>> getMostPopularMoviesFrom(ListMovieEntry first,
+                                                                   int pageSize) {
+        return readPage(() -> mMovieDao.getMostPopularMoviesFrom(first.getPopularity(),
+                first.getId(), pageSize));
+    }
 
     /**
-     * Database related operations
-     **/
+     * Loads, off the main thread, the page of movies ranked right before the given one.
+     *
+     * @param before   The first movie displayed below the page
+     * @param pageSize The number of movies to load
+     * @return {@link LiveData} which receives the page sorted from top ranked, see
+     * {@link #getMostPopularMoviesAfter}
+     */
+    public LiveData<List<ListMovieEntry>> getMostPopularMoviesBefore(ListMovieEntry before,
+                                                                     int pageSize) {
+        return readPage(() -> {
+            List<ListMovieEntry> movies = mMovieDao.getMostPopularMoviesBefore(
+                    before.getPopularity(), before.getId(), pageSize);
+            Collections.reverse(movies);
+            return movies;
+        });
+    }
 
-    public LiveData<MovieEntry> getMovieById(int id) {
+    private LiveData<List<ListMovieEntry>> readPage(Supplier<List<ListMovieEntry>> query) {
+        MutableLiveData<List<ListMovieEntry>> page = new MutableLiveData<>();
+        // The user is scrolling towards these movies, read them ahead of any sync being stored
+        boolean queued = mExecutors.diskRead().tryExecute(() -> page.postValue(query.get()),
+                MeteredExecutor.PRIORITY_UI);
+        if (!queued) page.setValue(null);
+        return page;
+    }
+
+    /**
+     * Searches the movies for the text typed by the user, once the user stops typing. Must be
+     * called from the main thread.
+     *
+     * @param texts The text typed by the user, as it changes
+     * @param size  The maximum number of movies found
+     * @return {@link LiveData} of the movies found, best matches first
+     */
+    public LiveData<List<ListMovieEntry>> searchMovies(LiveData<String> texts, int size) {
         initializeData();
-        return mMovieDao.getMovieById(id);
+        return new MovieSearch(mMovieDao, texts, size).getResults();
+    }
+
+    /**
+     * Mirrors the given list of movies in Firebase, and follows the changes made to it there.
+     * Each change is only emitted once, whether it comes from the database or from Firebase.
+     * Must be called from the main thread.
+     * <p>
+     * Every client shares the mirrored node, and removes from it the movies its list doesn't
+     * hold, so the list must be the same for all of them: the observed most popular movies, never
+     * the pages a user has scrolled through.
+     *
+     * @param localMovies The most popular movies, observed from the database
+     * @return {@link LiveData} of the merged list
+     */
+    public LiveData<List<ListMovieEntry>> mirrorMovies(LiveData<List<ListMovieEntry>> localMovies) {
+        DatabaseReference reference = FirebaseDatabase.getInstance()
+                .getReference(FirebaseMovieMirror.MOVIES_PATH);
+        // Snapshots are mapped by the readers, ahead of the background reads
+        LiveData<List<ListMovieEntry>> firebaseMovies =
+                new FirebaseMoviesLiveData(reference, mExecutors.diskRead());
+        return new MovieListMerger(localMovies, firebaseMovies, FirebaseMovieMirror.of(reference))
+                .getMovies();
+    }
+
+    /**
+     * Reads ahead, with the lowest priority, the movies the user is about to scroll to, so that
+     * opening one of them is served from the memory cache. Movies already cached are skipped, and
+     * so is the whole read when the readers are too busy.
+     *
+     * @param ids       The ids of the movies to read
+     * @param cancelled Tells whether the read is no longer wanted, checked before it starts
+     */
+    public void prefetchMovies(int[] ids, BooleanSupplier cancelled) {
+        mExecutors.diskRead().tryExecute(() -> {
+            if (cancelled.getAsBoolean()) return;
+            int[] missing = Arrays.stream(ids).filter(id -> !mMovieCache.contains(id)).toArray();
+            if (missing.length == 0) return;
+            for (MovieEntry movie : mMovieDao.getMoviesByIds(missing)) {
+                mMovieCache.put(movie);
+            }
+        }, MeteredExecutor.PRIORITY_BACKGROUND);
     }
 
+
+
     /**
-     * Deletes old movie data because we don't need to keep more than MAX_POPULAR_MOVIES_NUMBER data
+     * Database related operations
+     **/
+
+    /**
+     * Returns the movie with the given id. When the movie is in the memory cache, the returned
+     * {@link LiveData} holds it straight away, without waiting for the database; it then follows
+     * the database like any Room query, leaving out the reads which find the movie unchanged.
+     * Must be called from the main thread.
+     *
+     * @param id The id of the movie
+     * @return {@link LiveData} of the movie
      */
-    private void deleteOldMovies() {
-        mMovieDao.deleteOldPopularMovies(MoviesNetworkDataSource.MAX_POPULAR_MOVIES_NUMBER);
+    public LiveData<MovieEntry> getMovieById(int id) {
+        initializeData();
+        return mMovieCache.follow(id, mMovieDao.getMovieById(id));
     }
 
     /**
@@ -148,7 +300,7 @@ public class MoviesRepository {
      */
 
     private void startFetchMoviesService() {
-        mMoviesNetworkDataSource.startFetchMoviesService();
+        mMoviesNetworkDataSource.get().startFetchMoviesService();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import com.mfarssac.moviedb.repository.room.MovieDao;
+import com.mfarssac.moviedb.repository.room.MovieDatabase;
+
+/**
+ * Decides which movies are kept in the local database. Policies are applied by the
+ * {@link RetentionSweeper}, at most once per interval, right after a sync is inserted.
+ */
+public interface RetentionPolicy {
+
+    /**
+     * Deletes the movies this policy doesn't want to keep. Called inside a transaction.
+     *
+     * @param database The movie database
+     * @param now      The time of the sweep, in milliseconds
+     */
+    void apply(MovieDatabase database, long now);
+
+    /**
+     * Keeps the given number of most popular movies.
+     */
+    static RetentionPolicy keepMostPopular(int moviesToKeep) {
+        return (database, now) -> database.MoviesDao().deleteOldPopularMovies(moviesToKeep);
+    }
+
+    /**
+     * Keeps the movies which have been part of a sync within the given time.
+     */
+    static RetentionPolicy keepFetchedWithin(long maxAgeMillis) {
+        return (database, now) -> database.MoviesDao().deleteMoviesFetchedBefore(now - maxAgeMillis);
+    }
+
+    /**
+     * Keeps the movies under the given size. When over the limit, the least popular movies are
+     * deleted in proportion to the excess. Only the movie rows are weighed, see
+     * {@link MovieDao#getMoviesBytes()}: the tables and indexes which grow with them are
+     * not, as they would make the policy delete more movies than it should.
+     */
+    static RetentionPolicy capMoviesSize(long maxBytes) {
+        return (database, now) -> {
+            MovieDao movieDao = database.MoviesDao();
+            long usedBytes = movieDao.getMoviesBytes();
+            if (usedBytes <= maxBytes) return;
+
+            int count = movieDao.getMostPopularMoviesSize();
+            movieDao.deleteOldPopularMovies((int) (count * maxBytes / usedBytes));
+        };
+    }
+
+    /**
+     * Applies all the given policies, a movie is only kept if every one of them keeps it.
+     */
+    static RetentionPolicy allOf(RetentionPolicy... policies) {
+        return (database, now) -> {
+            for (RetentionPolicy policy : policies) {
+                policy.apply(database, now);
+            }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.util.Log;
+
+import com.mfarssac.moviedb.repository.room.MovieDatabase;
+
+/**
+ * Enforces a {@link RetentionPolicy} on the movie database. The sweep runs in the same write
+ * transaction as the insert of a sync, so observers of the movie table are only notified once,
+ * and never see the new movies before the old ones are swept. Sweeps are batched: no sweep runs
+ * sooner than the minimum interval after the previous one, the syncs in between only insert.
+ */
+public class RetentionSweeper {
+    private static final String LOG_TAG = RetentionSweeper.class.getSimpleName();
+
+    private final MovieDatabase mDatabase;
+    private final RetentionPolicy mPolicy;
+    private final long mMinIntervalMillis;
+    private final Runnable mAfterSweep;
+
+    // Only touched from the disk write executor
+    private long mLastSweep;
+
+    /**
+     * @param afterSweep Run on the disk write executor after each sweep, to clean up what the
+     *                   swept movies leave behind outside of the database
+     */
+    public RetentionSweeper(MovieDatabase database, RetentionPolicy policy,
+                            long minIntervalMillis, Runnable afterSweep) {
+        mDatabase = database;
+        mPolicy = policy;
+        mMinIntervalMillis = minIntervalMillis;
+        mAfterSweep = afterSweep;
+    }
+
+    /**
+     * Runs the given writes in a transaction, followed in the same transaction by a sweep when
+     * one is due. Must be called from the disk write executor.
+     *
+     * @param writes The writes of a sync
+     */
+    void writeAndSweep(Runnable writes) {
+        long now = System.currentTimeMillis();
+        boolean sweepDue = mLastSweep == 0 || now - mLastSweep >= mMinIntervalMillis;
+
+        mDatabase.runInTransaction(() -> {
+            writes.run();
+            if (sweepDue) mPolicy.apply(mDatabase, now);
+        });
+
+        if (sweepDue) {
+            mLastSweep = now;
+            mAfterSweep.run();
+            Log.d(LOG_TAG, "Retention sweep done");
+        }
+    }
+}
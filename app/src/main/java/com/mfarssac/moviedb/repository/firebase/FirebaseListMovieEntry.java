@@ -30,26 +30,22 @@ public class FirebaseListMovieEntry {
 
     private int id;
     private String title;
-    private String popularity;
+    private float popularity;
     private String poster_path;
     private String original_language;
     private String original_title;
-    private String overview;
-    private String votes;
-    private String vote_count;
+    private int vote_count;
 
     public FirebaseListMovieEntry() {}
 
-    public FirebaseListMovieEntry(String popularity, String poster_path, String original_language, String title,
-                                  String vote_count, String overview, int id, String original_title) {
+    public FirebaseListMovieEntry(float popularity, String poster_path, String original_language, String title,
+                                  int vote_count, int id, String original_title) {
         this.id = id;
         this.title = title;
         this.popularity = popularity;
         this.poster_path = poster_path;
         this.original_language = original_language;
         this.original_title = original_title;
-        this.overview = overview;
-        this.votes = votes;
         this.vote_count = vote_count;
     }
 
@@ -61,7 +57,7 @@ public class FirebaseListMovieEntry {
         return title;
     }
 
-    public String getPopularity() {
+    public float getPopularity() {
         return popularity;
     }
 
@@ -77,15 +73,7 @@ public class FirebaseListMovieEntry {
         return original_title;
     }
 
-    public String getOverview() {
-        return overview;
-    }
-
-    public String getVotes() {
-        return votes;
-    }
-
-    public String getVote_count() {
+    public int getVote_count() {
         return vote_count;
     }
 }
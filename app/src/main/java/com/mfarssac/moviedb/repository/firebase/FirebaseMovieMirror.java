@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.firebase;
+
+import android.util.Log;
+
+import com.google.firebase.database.DatabaseReference;
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mirrors a list of movies in Firebase, where each movie is stored under its id. It remembers
+ * what it believes Firebase holds, and only sends the movies which were added, changed or removed
+ * since, batched in a single multi-path update. An update is therefore sized to the change, not to
+ * the number of movies, and Firebase never sees half of it. Must be used from a single thread.
+ * <p>
+ * What Firebase holds is only known from its first snapshot: until it arrives, the movies to
+ * mirror are held back, then only their differences with that snapshot are sent, including the
+ * removal of the movies Firebase holds but the list doesn't.
+ */
+public class FirebaseMovieMirror {
+    private static final String LOG_TAG = FirebaseMovieMirror.class.getSimpleName();
+
+    // The node of the Firebase database under which the movies are mirrored
+    public static final String MOVIES_PATH = "movies";
+
+    /**
+     * Where the updates are sent. This is the node of {@link #MOVIES_PATH} in the Firebase
+     * database, or any in-process stand-in for it.
+     */
+    public interface Target {
+        /**
+         * Atomically writes the given children, a null value removing its child.
+         */
+        void updateChildren(Map<String, Object> children);
+    }
+
+    private final Target mTarget;
+    // What Firebase is believed to hold, by movie id, null until its first snapshot arrives
+    private Map<Integer, ListMovieEntry> mMirrored;
+    // The movies to mirror once the first snapshot arrives
+    private List<ListMovieEntry> mPending;
+
+    private long mUpdateCount;
+    private long mWrittenCount;
+    private long mRemovedCount;
+
+    public FirebaseMovieMirror(Target target) {
+        mTarget = target;
+    }
+
+    /**
+     * @param reference The node of {@link #MOVIES_PATH} in the Firebase database
+     */
+    public static FirebaseMovieMirror of(DatabaseReference reference) {
+        return new FirebaseMovieMirror(reference::updateChildren);
+    }
+
+    /**
+     * Sends to Firebase the differences between the given movies and the mirrored ones. Before
+     * the first snapshot, the movies are only sent once it arrives.
+     */
+    public void mirror(List<ListMovieEntry> movies) {
+        if (mMirrored == null) {
+            mPending = movies;
+            return;
+        }
+
+        Map<Integer, ListMovieEntry> mirrored = new HashMap<>(movies.size() * 2);
+        Map<String, Object> batch = new HashMap<>();
+
+        for (ListMovieEntry movie : movies) {
+            mirrored.put(movie.getId(), movie);
+            if (!movie.equals(mMirrored.get(movie.getId()))) {
+                batch.put(String.valueOf(movie.getId()), movie);
+                mWrittenCount++;
+            }
+        }
+        for (Integer id : mMirrored.keySet()) {
+            if (!mirrored.containsKey(id)) {
+                batch.put(String.valueOf(id), null);
+                mRemovedCount++;
+            }
+        }
+        if (!batch.isEmpty()) {
+            mTarget.updateChildren(batch);
+            mUpdateCount++;
+            Log.d(LOG_TAG, batch.size() + " movies sent, " + toString());
+        }
+
+        mMirrored = mirrored;
+    }
+
+    /**
+     * Tells whether the given movies, read from Firebase, should be ignored: they are the ones it
+     * was last sent, or they are the first snapshot while movies are waiting to be mirrored, which
+     * then supersede it. Otherwise they were changed by someone else and are now the mirrored
+     * ones.
+     */
+    public boolean isEcho(List<ListMovieEntry> movies) {
+        // Firebase stores each movie under its id, so the ids are unique
+        if (mMirrored != null && movies.size() == mMirrored.size() && isMirrored(movies)) {
+            return true;
+        }
+
+        Map<Integer, ListMovieEntry> mirrored = new HashMap<>(movies.size() * 2);
+        for (ListMovieEntry movie : movies) {
+            mirrored.put(movie.getId(), movie);
+        }
+        mMirrored = mirrored;
+
+        if (mPending != null) {
+            List<ListMovieEntry> pending = mPending;
+            mPending = null;
+            mirror(pending);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isMirrored(List<ListMovieEntry> movies) {
+        for (ListMovieEntry movie : movies) {
+            if (!movie.equals(mMirrored.get(movie.getId()))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "FirebaseMovieMirror [updates = " + mUpdateCount + ", written = " + mWrittenCount
+                + ", removed = " + mRemovedCount + "]";
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.firebase;
+
+import android.arch.lifecycle.LiveData;
+import android.util.Log;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import com.mfarssac.moviedb.MeteredExecutor;
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link LiveData} of the movies stored by id under a node of the Firebase database, sorted by
+ * popularity. The snapshots are mapped and sorted on a worker executor, so that the main thread
+ * only receives finished lists. Should the workers be too busy, a snapshot is skipped, the next
+ * one holding all of its changes; but never the first one, which seeds the mirror. The Firebase
+ * listener is only attached while the LiveData is observed.
+ */
+public class FirebaseMoviesLiveData extends LiveData<List<ListMovieEntry>> {
+    private static final String LOG_TAG = FirebaseMoviesLiveData.class.getSimpleName();
+
+    private final DatabaseReference mReference;
+    private final MeteredExecutor mExecutor;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final Object mPostLock = new Object();
+    private int mPostedGeneration;
+    // Whether the first snapshot since the listener was attached has been received
+    private boolean mFirstSnapshotReceived;
+
+    private final ValueEventListener mListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            // Snapshots are immutable, they are mapped on the worker while the next one arrives
+            int generation = mGeneration.incrementAndGet();
+            Runnable post = () -> {
+                List<ListMovieEntry> movieEntries = map(dataSnapshot);
+                // A newer snapshot may have been mapped first, this one is then outdated
+                synchronized (mPostLock) {
+                    if (generation > mPostedGeneration) {
+                        mPostedGeneration = generation;
+                        postValue(movieEntries);
+                    }
+                }
+            };
+            boolean queued = mExecutor.tryExecute(post, MeteredExecutor.PRIORITY_UI);
+            // Nothing may follow the first snapshot: when the workers can't take it, it is
+            // mapped here, which only takes the time of sorting the mirrored top list
+            if (!queued && !mFirstSnapshotReceived) post.run();
+            mFirstSnapshotReceived = true;
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            Log.d(LOG_TAG, "Firebase listener cancelled: " + databaseError.getMessage());
+        }
+    };
+
+    /**
+     * @param reference The node the movies are stored under
+     * @param executor  The executor the snapshots are mapped and sorted on, ahead of its
+     *                  background work
+     */
+    public FirebaseMoviesLiveData(DatabaseReference reference, MeteredExecutor executor) {
+        mReference = reference;
+        mExecutor = executor;
+    }
+
+    @Override
+    protected void onActive() {
+        mFirstSnapshotReceived = false;
+        mReference.addValueEventListener(mListener);
+    }
+
+    @Override
+    protected void onInactive() {
+        mReference.removeEventListener(mListener);
+    }
+
+    /**
+     * Reads the movies of a snapshot, stored by id. A node which doesn't exist holds no movies,
+     * which is still reported, as the mirror waits for what Firebase holds.
+     */
+    private static List<ListMovieEntry> map(DataSnapshot dataSnapshot) {
+        List<FirebaseListMovieEntry> firebaseMovies =
+                new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            try {
+                FirebaseListMovieEntry firebaseMovie = child.getValue(FirebaseListMovieEntry.class);
+                if (firebaseMovie != null) firebaseMovies.add(firebaseMovie);
+            } catch (DatabaseException e) {
+                // Written by an older version of the app, with its numbers as text
+                Log.d(LOG_TAG, "Skipping movie " + child.getKey() + ": " + e.getMessage());
+            }
+        }
+        return toSortedList(firebaseMovies);
+    }
+
+    /**
+     * Maps the Firebase Database returned MovieEntries into MovieDB Entries, sorted like the
+     * database sorts them: by popularity in descending order, then by id.
+     */
+    static List<ListMovieEntry> toSortedList(List<FirebaseListMovieEntry> firebaseMovies) {
+        List<ListMovieEntry> movieEntries = new ArrayList<>(firebaseMovies.size());
+        for (FirebaseListMovieEntry firebaseMovie : firebaseMovies) {
+            movieEntries.add(new ListMovieEntry(firebaseMovie));
+        }
+
+        Collections.sort(movieEntries, (o1, o2) -> {
+            int byPopularity = Float.compare(o2.getPopularity(), o1.getPopularity());
+            return byPopularity != 0 ? byPopularity : Integer.compare(o2.getId(), o1.getId());
+        });
+        return movieEntries;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.images;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.mfarssac.moviedb.Singleton;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.OkHttp3Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+
+/**
+ * Loads the movie posters. TMDB serves each poster in several widths: the smallest one at least as
+ * wide as the target is downloaded, rather than a fixed large one, and is decoded without alpha
+ * channel, at 2 bytes per pixel.
+ * <p>
+ * Decoded posters are kept in a bounded memory LRU, keyed by URL and target size, and the
+ * downloaded files in a disk cache which survives restarts. The posters of the stored movies are
+ * also kept by the {@link PosterStore}, which serves them without any network.
+ */
+public class PosterLoader {
+    private static final String LOG_TAG = PosterLoader.class.getSimpleName();
+
+    private static final String MOVIEDB_API_IMAGES_URL = "https://image.tmdb.org/t/p/";
+    // Widths of the poster renditions served by TMDB, from the smallest
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+    private static final String ORIGINAL_POSTER = "original";
+
+    // Share of the application heap used by the decoded posters
+    private static final int MEMORY_CACHE_HEAP_DIVIDER = 16;
+    private static final String DISK_CACHE_DIRECTORY = "posters";
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    // For Singleton instantiation
+    private static final Singleton<PosterLoader> INSTANCE = new Singleton<>();
+    private final Picasso mPicasso;
+    private final PosterStore mStore;
+
+    private PosterLoader(Picasso picasso, PosterStore store) {
+        mPicasso = picasso;
+        mStore = store;
+    }
+
+    public static PosterLoader getInstance(Context context, PosterStore store) {
+        Log.d(LOG_TAG, "Getting the poster loader");
+        return INSTANCE.get(() -> {
+            Context appContext = context.getApplicationContext();
+            int memoryCacheBytes =
+                    (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_DIVIDER);
+            OkHttp3Downloader downloader = new OkHttp3Downloader(
+                    new File(appContext.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_BYTES);
+            Log.d(LOG_TAG, "Made new poster loader");
+            return new PosterLoader(new Picasso.Builder(appContext)
+                    .memoryCache(new LruCache(memoryCacheBytes))
+                    .downloader(downloader)
+                    .addRequestHandler(new StoredPosterRequestHandler(store, downloader))
+                    .defaultBitmapConfig(Bitmap.Config.RGB_565)
+                    .build(), store);
+        });
+    }
+
+    /**
+     * Builds the request of a poster resized to the given size. The poster is read from the
+     * {@link PosterStore} when it is stored in a rendition wide enough, and downloaded otherwise.
+     * Until the index of the stored posters is read, whether a poster is stored is only looked up
+     * when the request runs, off the main thread, so that the list is displayed without waiting.
+     *
+     * @param posterPath The TMDB path of the poster
+     * @param width      The target width, in pixels
+     * @param height     The target height, in pixels
+     * @return The Picasso request of the poster
+     */
+    public RequestCreator load(String posterPath, int width, int height) {
+        if (posterPath != null && width <= PosterStore.STORED_POSTER_WIDTH) {
+            String contentHash = mStore.getContentHash(posterPath);
+            if (contentHash != null) {
+                return mPicasso.load(StoredPosterRequestHandler.getUri(contentHash))
+                        .resize(width, height);
+            }
+            if (!mStore.isIndexLoaded()) {
+                return mPicasso.load(StoredPosterRequestHandler.getPendingUri(posterPath))
+                        .resize(width, height);
+            }
+        }
+        return mPicasso.load(getPosterUrl(posterPath, width)).resize(width, height);
+    }
+
+    /**
+     * Cancels the requests made with the given tag.
+     */
+    public void cancelTag(Object tag) {
+        mPicasso.cancelTag(tag);
+    }
+
+    /**
+     * @return The URL of the smallest rendition of the poster at least as wide as the given width
+     */
+    static String getPosterUrl(String posterPath, int width) {
+        for (int posterWidth : POSTER_WIDTHS) {
+            if (posterWidth >= width) {
+                return MOVIEDB_API_IMAGES_URL + "w" + posterWidth + posterPath;
+            }
+        }
+        return MOVIEDB_API_IMAGES_URL + ORIGINAL_POSTER + posterPath;
+    }
+}
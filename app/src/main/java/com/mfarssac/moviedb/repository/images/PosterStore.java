@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.images;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.mfarssac.moviedb.AppExecutors;
+import com.mfarssac.moviedb.MeteredExecutor;
+import com.mfarssac.moviedb.Singleton;
+import com.mfarssac.moviedb.repository.room.PosterDao;
+import com.mfarssac.moviedb.repository.room.PosterEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the posters of the stored movies on disk, so that the list can be displayed without
+ * network. Posters are downloaded during the sync, in the smallest rendition wide enough for
+ * every icon of the app, and written to files named after the hash of their content. The
+ * {@link PosterEntry} table tells which file holds the poster of each poster_path.
+ * <p>
+ * Posters follow the retention of the movies: once no movie uses a poster anymore, its row and
+ * then its file are deleted by {@link #collectGarbage()}. The other way round, the posters missing
+ * for stored movies are downloaded by {@link #storeMissing()}, whether they failed to download
+ * before or belong to movies stored before posters were kept. A poster which can't be downloaded
+ * at all, such as one the server doesn't have, is recorded without a file, and only tried again
+ * after {@link #FAILED_RETRY_MILLIS}.
+ */
+public class PosterStore {
+    private static final String LOG_TAG = PosterStore.class.getSimpleName();
+
+    // Width of the rendition stored, which covers every icon of the app
+    static final int STORED_POSTER_WIDTH = 92;
+
+    private static final String STORE_DIRECTORY = "posters";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+    private static final int MAX_POSTER_BYTES = 512 * 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    // Downloads queued by a call, so that they leave room in the network queue for the syncs
+    private static final int MAX_DOWNLOADS_PER_CALL = 20;
+    // A poster which failed for good is only tried again this long after
+    private static final long FAILED_RETRY_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    // Files this recent may not be recorded yet, garbage collection leaves them alone
+    private static final long RECORDING_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // A poster requested before the index is read waits this long for it, then is downloaded
+    private static final long INDEX_WAIT_MILLIS = 2000;
+
+    // For Singleton instantiation
+    private static final Singleton<PosterStore> INSTANCE = new Singleton<>();
+    private final File mDirectory;
+    private final PosterDao mPosterDao;
+    private final AppExecutors mExecutors;
+
+    // Content hash of each stored poster_path, read from the database once, then kept up to date
+    private final Map<String, String> mHashes = new ConcurrentHashMap<>();
+    // The poster_paths being downloaded
+    private final Set<String> mDownloading = ConcurrentHashMap.newKeySet();
+    // Released once the index has been read, or given up
+    private final CountDownLatch mIndexLoaded = new CountDownLatch(1);
+
+    private PosterStore(File directory, PosterDao posterDao, AppExecutors executors) {
+        mDirectory = directory;
+        mPosterDao = posterDao;
+        mExecutors = executors;
+        // The first posters wait for the index: it is read ahead of background reads, then the
+        // posters missing since the last run are looked for
+        boolean queued = mExecutors.diskRead().tryExecute(() -> {
+            try {
+                loadIndex();
+            } catch (RuntimeException e) {
+                // Whatever failed, the posters aren't held back: they are downloaded instead
+                Log.e(LOG_TAG, "Could not read the stored posters", e);
+                return;
+            } finally {
+                mIndexLoaded.countDown();
+            }
+            storeMissing();
+        }, MeteredExecutor.PRIORITY_UI);
+        if (!queued) {
+            Log.d(LOG_TAG, "Readers too busy, posters served from the network");
+            mIndexLoaded.countDown();
+        }
+    }
+
+    public static PosterStore getInstance(Context context, PosterDao posterDao,
+                                          AppExecutors executors) {
+        Log.d(LOG_TAG, "Getting the poster store");
+        return INSTANCE.get(() -> {
+            File directory = new File(context.getApplicationContext().getFilesDir(),
+                    STORE_DIRECTORY);
+            Log.d(LOG_TAG, "Made new poster store");
+            return new PosterStore(directory, posterDao, executors);
+        });
+    }
+
+    /**
+     * @return The stored poster file with the given content hash
+     */
+    File getFile(String contentHash) {
+        return new File(mDirectory, contentHash);
+    }
+
+    /**
+     * @return The content hash of the poster stored for the poster_path, null if it isn't stored
+     */
+    String getContentHash(String posterPath) {
+        return posterPath == null ? null : mHashes.get(posterPath);
+    }
+
+    /**
+     * @return Whether the index of the stored posters has been read, so that
+     * {@link #getContentHash(String)} tells which posters are stored
+     */
+    boolean isIndexLoaded() {
+        return mIndexLoaded.getCount() == 0;
+    }
+
+    /**
+     * Waits for the index of the stored posters to be read, at most {@link #INDEX_WAIT_MILLIS},
+     * so that a poster requested as the app starts isn't downloaded when it is stored. Must be
+     * called off the main thread.
+     *
+     * @return The content hash of the poster stored for the poster_path, null if it isn't stored
+     * or the index wasn't read in time
+     */
+    String awaitContentHash(String posterPath) throws InterruptedException {
+        if (!mIndexLoaded.await(INDEX_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            Log.d(LOG_TAG, "Poster index not read yet, poster " + posterPath + " downloaded");
+        }
+        return getContentHash(posterPath);
+    }
+
+    /**
+     * Downloads the posters of the stored movies which aren't stored yet, at most
+     * {@link #MAX_DOWNLOADS_PER_CALL} of them, each in its own background task so that they
+     * share the network pool, then records each of them with the disk writer. Posters which fail
+     * to download, or aren't reached, are looked for again on the next call, made after each
+     * batch of movies stored and when the app starts, unless they failed for good. Must be called
+     * off the main thread.
+     */
+    public void storeMissing() {
+        long retryFailedBefore = System.currentTimeMillis() - FAILED_RETRY_MILLIS;
+        int queued = 0;
+        for (String posterPath : mPosterDao.getMissingPosterPaths(retryFailedBefore)) {
+            if (queued == MAX_DOWNLOADS_PER_CALL) break;
+            if (mHashes.containsKey(posterPath) || !mDownloading.add(posterPath)) continue;
+
+            if (mExecutors.networkIO().tryExecute(() -> store(posterPath),
+                    MeteredExecutor.PRIORITY_BACKGROUND)) {
+                queued++;
+            } else {
+                // The network queue is full, the others wait for the next call too
+                mDownloading.remove(posterPath);
+                break;
+            }
+        }
+        if (queued > 0) Log.d(LOG_TAG, queued + " posters queued for download");
+    }
+
+    /**
+     * Deletes the posters no movie uses anymore: their rows, then the files no row points to.
+     * Runs on the disk write executor, after each retention sweep.
+     */
+    public void collectGarbage() {
+        int deleted = mPosterDao.deleteUnreferenced();
+
+        Map<String, String> stored = new HashMap<>();
+        for (PosterEntry poster : mPosterDao.getPosters()) {
+            stored.put(poster.getPoster_path(), poster.getContent_hash());
+        }
+        // Updated in place, so that lookups never see an empty index
+        mHashes.keySet().retainAll(stored.keySet());
+        mHashes.putAll(stored);
+        Set<String> hashes = new HashSet<>(stored.values());
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        long recent = System.currentTimeMillis() - RECORDING_GRACE_MILLIS;
+        int deletedFiles = 0;
+        for (File file : files) {
+            if (!hashes.contains(file.getName()) && file.lastModified() < recent
+                    && file.delete()) {
+                deletedFiles++;
+            }
+        }
+        Log.d(LOG_TAG, deleted + " posters and " + deletedFiles + " files deleted");
+    }
+
+    /**
+     * Downloads a poster, then records it, or records that it failed for good.
+     */
+    private void store(String posterPath) {
+        PosterEntry poster;
+        try {
+            poster = download(posterPath);
+        } catch (IOException e) {
+            // Still missing, so downloaded again by the next call
+            Log.d(LOG_TAG, "Could not store poster " + posterPath + ": " + e.getMessage());
+            mDownloading.remove(posterPath);
+            return;
+        }
+        mExecutors.diskWrite().execute(() -> {
+            mPosterDao.insert(Collections.singletonList(poster));
+            if (poster.getContent_hash() != null) {
+                mHashes.put(poster.getPoster_path(), poster.getContent_hash());
+            } else {
+                Log.d(LOG_TAG, "Poster " + posterPath + " can't be downloaded");
+            }
+            mDownloading.remove(posterPath);
+        });
+    }
+
+    private void loadIndex() {
+        for (PosterEntry poster : mPosterDao.getPosters()) {
+            mHashes.putIfAbsent(poster.getPoster_path(), poster.getContent_hash());
+        }
+        Log.d(LOG_TAG, mHashes.size() + " posters stored");
+    }
+
+    /**
+     * @return The poster stored, or without content hash when it can't be downloaded at all
+     * @throws IOException When the download failed, but could succeed later
+     */
+    private PosterEntry download(String posterPath) throws IOException {
+        URL url;
+        try {
+            url = new URL(PosterLoader.getPosterUrl(posterPath, STORED_POSTER_WIDTH));
+        } catch (MalformedURLException e) {
+            return failed(posterPath);
+        }
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        byte[] poster;
+        try {
+            if (isPermanentFailure(urlConnection.getResponseCode())) return failed(posterPath);
+            try (InputStream in = urlConnection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    if (out.size() > MAX_POSTER_BYTES) return failed(posterPath);
+                }
+                poster = out.toByteArray();
+            }
+        } finally {
+            urlConnection.disconnect();
+        }
+
+        String contentHash = hash(poster);
+        File file = getFile(contentHash);
+        // The same content may already be stored for another poster_path
+        if (!file.exists()) write(file, poster);
+        return new PosterEntry(posterPath, contentHash, poster.length, System.currentTimeMillis());
+    }
+
+    private static PosterEntry failed(String posterPath) {
+        return new PosterEntry(posterPath, null, 0, System.currentTimeMillis());
+    }
+
+    /**
+     * @return Whether the server answered that it will never serve the poster: a client error
+     * other than a timeout or too many requests
+     */
+    private static boolean isPermanentFailure(int responseCode) {
+        return responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                && responseCode < HttpURLConnection.HTTP_INTERNAL_ERROR
+                && responseCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                && responseCode != HTTP_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Writes the file through a temporary one, so that a file named after a hash is complete.
+     */
+    private void write(File file, byte[] content) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        File temporary = new File(mDirectory, file.getName() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(temporary).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.images;
+
+import android.net.Uri;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Response;
+import okio.Okio;
+
+/**
+ * Picasso {@link RequestHandler} serving the posters of the {@link PosterStore}. Their URIs are
+ * made of {@link #SCHEME} and the content hash of the poster. A poster file is handed to Picasso
+ * as a source, which it decodes from and closes, without copying the file in memory first.
+ * <p>
+ * The posters requested before the index of the store is read have URIs made of
+ * {@link #PENDING_SCHEME} and the poster_path instead: they wait for the index on a Picasso
+ * thread, then are read from the store, or downloaded when they aren't stored.
+ */
+class StoredPosterRequestHandler extends RequestHandler {
+
+    static final String SCHEME = "stored-poster";
+    static final String PENDING_SCHEME = "pending-poster";
+
+    private final PosterStore mStore;
+    private final Downloader mDownloader;
+
+    StoredPosterRequestHandler(PosterStore store, Downloader downloader) {
+        mStore = store;
+        mDownloader = downloader;
+    }
+
+    static Uri getUri(String contentHash) {
+        return new Uri.Builder().scheme(SCHEME).opaquePart(contentHash).build();
+    }
+
+    static Uri getPendingUri(String posterPath) {
+        return new Uri.Builder().scheme(PENDING_SCHEME).opaquePart(posterPath).build();
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        return SCHEME.equals(data.uri.getScheme()) || PENDING_SCHEME.equals(data.uri.getScheme());
+    }
+
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException {
+        if (SCHEME.equals(request.uri.getScheme())) {
+            return read(mStore.getFile(request.uri.getSchemeSpecificPart()));
+        }
+
+        String posterPath = request.uri.getSchemeSpecificPart();
+        String contentHash;
+        try {
+            contentHash = mStore.awaitContentHash(posterPath);
+        } catch (InterruptedException e) {
+            // The request was cancelled
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (contentHash != null) return read(mStore.getFile(contentHash));
+
+        Response response = mDownloader.load(new okhttp3.Request.Builder()
+                .url(PosterLoader.getPosterUrl(posterPath, PosterStore.STORED_POSTER_WIDTH))
+                .build());
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("Poster " + posterPath + " not downloaded: HTTP "
+                    + response.code());
+        }
+        return new Result(response.body().source(), Picasso.LoadedFrom.NETWORK);
+    }
+
+    private static Result read(File file) throws IOException {
+        return new Result(Okio.source(file), Picasso.LoadedFrom.DISK);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+import com.mfarssac.moviedb.repository.room.PageFetchEntry;
+
+/**
+ * The movies downloaded by a sync, along with the fetch ledger rows of the pages they come from.
+ * The rows must only be stored with the movies, in the same transaction: stored before, the next
+ * syncs would skip pages whose movies never made it to the database.
+ */
+public class MovieBatch {
+
+    private final MovieEntry[] mMovies;
+    private final PageFetchEntry[] mPageFetches;
+
+    MovieBatch(MovieEntry[] movies, PageFetchEntry[] pageFetches) {
+        mMovies = movies;
+        mPageFetches = pageFetches;
+    }
+
+    public MovieEntry[] getMovies() {
+        return mMovies;
+    }
+
+    public PageFetchEntry[] getPageFetches() {
+        return mPageFetches;
+    }
+}
@@ -21,72 +21,63 @@ package com.mfarssac.moviedb.repository.network;
 import android.support.annotation.Nullable;
 
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.mfarssac.moviedb.repository.room.MovieEntry;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Parser for MovieDB JSON data.
+ * <p>
+ * The page is read in a single pass with a {@link JsonReader}: every element of the "results"
+ * array is bound straight into a {@link MovieEntry}, without building an intermediate JSON tree
+ * or re-serializing each movie to a String.
  */
 final class MovieDbJsonParser {
 
     // Movie information. Each movie info is an element of the "list" array
     private static final String MDB_PAGE_RESULTS = "results";
 
-    private static final String MDB_VIDEO = "video";
-    private static final String MDB_VOTE_AVERAGE = "vote_average";
-    private static final String MDB_TITLE = "title";
-    private static final String MDB_POPULARITY = "popularity";
-    private static final String MDB_POSTER_PATH = "poster_path";
-    private static final String MDB_ORIGINAL_LANGUAGE = "original_language";
-    private static final String MDB_ORIGINAL_TITLE = "original_title";
-    private static final String MDB_GENRE_IDS = "genre_ids";
-    private static final String MDB_BACKDROP_PATH = "backdrop_path";
-    private static final String MDB_ADULT = "adult";
-    private static final String MDB_OVERVIEW = "overview";
-    private static final String MDB_RELEASE_DATE = "release_date";
-
     // Movie DB API Status Codes
     private static final String MDB_STATUS_CODE = "status_code";
 
-    private static boolean hasHttpError(JSONObject movieDbJson) throws JSONException {
+    // The API returns pages with 20 movies, used to presize the results list
+    private static final int MDB_PAGE_SIZE = 20;
 
-        if (movieDbJson.has(MDB_STATUS_CODE)) {
-            int statusCode = movieDbJson.getInt(MDB_STATUS_CODE);
+    // Gson instances are thread safe, so the adapter is built once and shared by all fetches
+    private static final TypeAdapter<MovieEntry> MOVIE_ADAPTER =
+            new Gson().getAdapter(MovieEntry.class);
 
-            switch (statusCode) {
-                case HttpURLConnection.HTTP_OK:
-                    return false;
-                default:
-                    // Server probably down
-                    return true;
-            }
+    private static boolean hasHttpError(int statusCode) {
+        switch (statusCode) {
+            case HttpURLConnection.HTTP_OK:
+                return false;
+            default:
+                // Server probably down
+                return true;
         }
-        return false;
     }
 
-    private static MovieEntry[] fromJson(final JSONObject moviesPageJson) throws JSONException {
-
-        JSONArray jsonMoviesArray = moviesPageJson.getJSONArray(MDB_PAGE_RESULTS);
-
-        MovieEntry[] movieEntries = new MovieEntry[jsonMoviesArray.length()];
-        Gson gson = new Gson();
+    private static MovieEntry[] readResults(final JsonReader reader) throws IOException {
 
-        for (int i = 0; i < jsonMoviesArray.length(); i++) {
-            // Get the JSON object representing one movie of the page
-            JSONObject movieEntry = jsonMoviesArray.getJSONObject(i);
-
-            MovieEntry movie = gson.fromJson(movieEntry.toString(), MovieEntry.class);
-            movieEntries[i] = movie;
+        List<MovieEntry> movieEntries = new ArrayList<>(MDB_PAGE_SIZE);
 
+        reader.beginArray();
+        while (reader.hasNext()) {
+            // Bind the JSON object representing one movie of the page
+            movieEntries.add(MOVIE_ADAPTER.read(reader));
         }
-        return movieEntries;
-    }
+        reader.endArray();
 
+        return movieEntries.toArray(new MovieEntry[movieEntries.size()]);
+    }
 
     /**
      * This method parses JSON from a web response and returns an array
@@ -95,19 +86,49 @@ final class MovieDbJsonParser {
      *
      * @param movieDBJsonStr JSON response from server
      * @return One page of information with 20 movies
-     * @throws JSONException If JSON data cannot be properly parsed
+     * @throws IOException If JSON data cannot be properly parsed
      */
     @Nullable
-    MovieDbResponse parse(final String movieDBJsonStr) throws JSONException {
-        JSONObject moviesJson = new JSONObject(movieDBJsonStr);
+    MovieDbResponse parse(final String movieDBJsonStr) throws IOException {
+        return parse(new StringReader(movieDBJsonStr));
+    }
 
-        // Is there an error?
-        if (hasHttpError(moviesJson)) {
-            return null;
-        }
+    /**
+     * Streams a popular movies page from the given reader. Only the "results" array and the
+     * optional "status_code" are looked at, every other member is skipped without being decoded.
+     *
+     * @param movieDBJson Reader positioned at the start of the JSON response from server
+     * @return One page of information with 20 movies, null if the server reported an error
+     * @throws IOException If JSON data cannot be read or properly parsed
+     */
+    @Nullable
+    MovieDbResponse parse(final Reader movieDBJson) throws IOException {
+        JsonReader reader = new JsonReader(movieDBJson);
+        try {
+            MovieEntry[] movieEntries = null;
+            int statusCode = HttpURLConnection.HTTP_OK;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (MDB_PAGE_RESULTS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    movieEntries = readResults(reader);
+                } else if (MDB_STATUS_CODE.equals(name)) {
+                    statusCode = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        MovieEntry[] movieEntries = fromJson(moviesJson);
+            // Is there an error?
+            if (hasHttpError(statusCode) || movieEntries == null) {
+                return null;
+            }
 
-        return new MovieDbResponse(movieEntries);
+            return new MovieDbResponse(movieEntries);
+        } finally {
+            reader.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -39,7 +39,7 @@ public class MoviesDBJobService extends JobService {
      * method is run on the application's main thread, so we need to offload work to a background
      * thread.
      *
-     * @return whether there is more work remaining.
+     * @return whether there is more work remaining, always true as the fetch is asynchronous.
      */
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
@@ -47,9 +47,9 @@ public class MoviesDBJobService extends JobService {
 
         MoviesNetworkDataSource networkDataSource =
                 InjectorUtils.provideNetworkDataSource(this.getApplicationContext());
-        networkDataSource.fetchMovies();
-
-        jobFinished(jobParameters, false);
+        // The fetch runs on the network threads. The job is only finished once all of it is done,
+        // and the sync then schedules the next job, retries included, which replaces this one.
+        networkDataSource.fetchMovies(() -> jobFinished(jobParameters, false));
 
         return true;
     }
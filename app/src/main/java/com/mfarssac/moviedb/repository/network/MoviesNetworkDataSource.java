@@ -22,6 +22,8 @@ import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
 import android.content.Intent;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.firebase.jobdispatcher.Constraint;
@@ -32,77 +34,134 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 import com.mfarssac.moviedb.AppExecutors;
+import com.mfarssac.moviedb.MeteredExecutor;
+import com.mfarssac.moviedb.Singleton;
 import com.mfarssac.moviedb.repository.room.MovieEntry;
+import com.mfarssac.moviedb.repository.room.PageFetchDao;
+import com.mfarssac.moviedb.repository.room.PageFetchEntry;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 
 /**
  * Provides an API for doing all operations with the server data
  */
 public class MoviesNetworkDataSource {
-    // The number of movies we want our API to keep, set to 50 as per specs
-    public static int MAX_POPULAR_MOVIES_NUMBER = 50;
+    // The number of most popular movies fetched on each sync, set to 50 as per specs
+    public static final int MAX_POPULAR_MOVIES_NUMBER = 50;
 
-    public static String MDB_FETCH_PAGE1 = "1";
-    public static String MDB_FETCH_PAGE2 = "2";
-    public static String MDB_FETCH_PAGE3 = "3";
+    // The Movie DB API returns the popular movies in pages of 20
+    private static final int MDB_PAGE_SIZE = 20;
 
     private static final String LOG_TAG = MoviesNetworkDataSource.class.getSimpleName();
 
-    // Interval at which to sync with the backend movies database. Use TimeUnit for convenience, rather than
-    // writing out a bunch of multiplication ourselves and risk making a silly mistake.
-    private static final int SYNC_INTERVAL_HOURS = 3;
-//    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_INTERVAL_SECONDS = 180;
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    // The sync may run this late, as a fraction of the time it was scheduled ahead, so that the
+    // dispatcher can batch it with other work
+    private static final int SYNC_FLEXTIME_DIVIDER = 3;
+    private static final int MIN_SYNC_FLEXTIME_SECONDS = 60;
     private static final String MOVIES_SYNC_TAG = "movies-sync";
 
     // For Singleton instantiation
-    private static final Object LOCK = new Object();
-    private static MoviesNetworkDataSource sInstance;
+    private static final Singleton<MoviesNetworkDataSource> INSTANCE = new Singleton<>();
     private final Context mContext;
 
+    // A page is stored in full at least this often, even if it never changes, so that the
+    // movies it holds are never expired by the retention sweep
+    static final long PAGE_FETCH_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
     // LiveData storing the latest downloaded movies
-    private final MutableLiveData<MovieEntry[]> mDownloadedPopularMovies;
+    private final MutableLiveData<MovieBatch> mDownloadedPopularMovies;
     private final AppExecutors mExecutors;
+    private final PageFetchDao mPageFetchDao;
+    private final SyncScheduler mSyncScheduler;
+    private final SyncScheduler.Clock mClock;
+    // The URL of each page of popular movies
+    private final IntFunction<URL> mPageUrls;
+    // Set when the movies stored locally can't be trusted and every page must be downloaded
+    private volatile boolean mForceFullFetch;
+
+    private MoviesNetworkDataSource(Context context, AppExecutors executors,
+                                    PageFetchDao pageFetchDao, SyncScheduler syncScheduler) {
+        this(context, executors, pageFetchDao, syncScheduler, System::currentTimeMillis,
+                pageNumber -> NetworkUtils.getUrl(String.valueOf(pageNumber)));
+    }
 
-    private MoviesNetworkDataSource(Context context, AppExecutors executors) {
+    @VisibleForTesting
+    MoviesNetworkDataSource(Context context, AppExecutors executors, PageFetchDao pageFetchDao,
+                            SyncScheduler syncScheduler, SyncScheduler.Clock clock,
+                            IntFunction<URL> pageUrls) {
         mContext = context;
         mExecutors = executors;
-        mDownloadedPopularMovies = new MutableLiveData<MovieEntry[]>();
+        mPageFetchDao = pageFetchDao;
+        mSyncScheduler = syncScheduler;
+        mClock = clock;
+        mPageUrls = pageUrls;
+        mDownloadedPopularMovies = new MutableLiveData<MovieBatch>();
     }
 
     /**
      * Get the singleton for this class
      */
-    public static MoviesNetworkDataSource getInstance(Context context, AppExecutors executors) {
+    public static MoviesNetworkDataSource getInstance(Context context, AppExecutors executors,
+                                                      PageFetchDao pageFetchDao,
+                                                      SyncScheduler syncScheduler) {
         Log.d(LOG_TAG, "Getting the network data source");
-        if (sInstance == null) {
-            synchronized (LOCK) {
-                sInstance = new MoviesNetworkDataSource(context.getApplicationContext(), executors);
-                Log.d(LOG_TAG, "Made new network data source");
-            }
-        }
-        return sInstance;
+        return INSTANCE.get(() -> {
+            Log.d(LOG_TAG, "Made new network data source");
+            return new MoviesNetworkDataSource(context.getApplicationContext(), executors,
+                    pageFetchDao, syncScheduler);
+        });
     }
 
-    public LiveData<MovieEntry[]> getCurrentMovies() {
+    /**
+     * @return The batches of movies downloaded. {@link #storePageFetches} must be called in the
+     * transaction storing the movies of each batch.
+     */
+    public LiveData<MovieBatch> getCurrentMovies() {
         return mDownloadedPopularMovies;
     }
 
     /**
-     * Starts an intent service to fetch the movie.
+     * Records in the fetch ledger the pages the movies of the given batch come from. Must be
+     * called in the transaction storing these movies: until then, the pages have to be fetched
+     * again by the next sync.
+     */
+    public void storePageFetches(MovieBatch batch) {
+        mPageFetchDao.insert(batch.getPageFetches());
+    }
+
+    /**
+     * Starts an intent service to fetch the movie. As this is only needed when movies are missing
+     * locally, the pages are downloaded in full whatever the fetch ledger says.
      */
     public void startFetchMoviesService() {
+        mForceFullFetch = true;
         Intent intentToFetch = new Intent(mContext, MoviesSyncIntentService.class);
         mContext.startService(intentToFetch);
         Log.d(LOG_TAG, "Service created");
     }
 
     /**
-     * Schedules a repeating job service which fetches the movie.
+     * Schedules the job service which fetches the movie, for when the {@link SyncScheduler} says
+     * the next sync is due. Each sync then schedules the following one.
      */
-    public void scheduleRecurringFetchMoviesSync() {
+    public void scheduleFetchMoviesSync() {
+        scheduleFetchMoviesSync(mSyncScheduler.getDelayMillis());
+    }
+
+    @VisibleForTesting
+    void scheduleFetchMoviesSync(long delayMillis) {
+        int windowStart = (int) TimeUnit.MILLISECONDS.toSeconds(delayMillis);
+        int windowEnd = windowStart
+                + Math.max(windowStart / SYNC_FLEXTIME_DIVIDER, MIN_SYNC_FLEXTIME_SECONDS);
+
         Driver driver = new GooglePlayDriver(mContext);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -125,19 +184,18 @@ public class MoviesNetworkDataSource {
                  */
                 .setLifetime(Lifetime.FOREVER)
                 /*
-                 * We want the Movie DB's movie data to stay up to date, so we tell this Job to recur.
+                 * The Job doesn't recur: the interval changes from one sync to the next, so each
+                 * sync schedules the following one once it knows what it found.
                  */
-                .setRecurring(true)
+                .setRecurring(false)
                 /*
-                 * We want the movie data to be synced every 3 to 4 hours. The first argument for
-                 * Trigger's static executionWindow method is the start of the time frame when the
-                 * sync should be performed. The second argument is the latest point in time at
-                 * which the data should be synced. Please note that this end time is not
-                 * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
+                 * The first argument for Trigger's static executionWindow method is the start of
+                 * the time frame when the sync should be performed. The second argument is the
+                 * latest point in time at which the data should be synced. Please note that this
+                 * end time is not guaranteed, but is more of a guideline for
+                 * FirebaseJobDispatcher to go off of.
                  */
-                .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                .setTrigger(Trigger.executionWindow(windowStart, windowEnd))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -148,122 +206,240 @@ public class MoviesNetworkDataSource {
 
         // Schedule the Job with the dispatcher
         dispatcher.schedule(syncMovieDbJob);
-        Log.d(LOG_TAG, "Job scheduled");
+        Log.d(LOG_TAG, "Job scheduled in " + windowStart + " to " + windowEnd + " seconds");
     }
 
     /**
-     * Gets the newest movie
+     * Gets the newest movies. The pages needed to hold {@link #MAX_POPULAR_MOVIES_NUMBER} movies
+     * are fetched concurrently and, once all of them are back, merged into a single batch which
+     * is posted to the LiveData only once. Posting every page on its own could drop pages, as
+     * postValue only delivers the latest value set before the main thread gets to run.
+     * <p>
+     * Pages are requested with the validators recorded in the fetch ledger. The pages which the
+     * server reports as not modified, or whose content hash didn't change, are left out of the
+     * batch, so they cost neither parsing nor database writes.
+     * <p>
+     * Once all the pages are back, the outcome is reported to the {@link SyncScheduler}, the sync
+     * is finished, then the next sync is scheduled accordingly.
+     *
+     * @param onFinished Run once the sync is finished, before the next one is scheduled, may be
+     *                   null
      */
-    void fetchMovies() {
+    void fetchMovies(@Nullable Runnable onFinished) {
         Log.d(LOG_TAG, "Fetch movies started");
-        mExecutors.networkIO().execute(() -> {
-            try {
-
-                // The getUrl method will return the URL that we need to get the a page of popular
-                // movies from the database.
-
-                URL movieRequestUrl = NetworkUtils.getUrl(MDB_FETCH_PAGE1);
-
-                // Use the URL to retrieve the JSON
-                String jsonMovieResponse = NetworkUtils.getResponseFromHttpUrl(movieRequestUrl);
-
-                // Parse the JSON into a list of movies
-                MovieDbResponse response = new MovieDbJsonParser().parse(jsonMovieResponse);
-                Log.d(LOG_TAG, "JSON Parsing finished");
-
-
-                // As long as there are movies, update the LiveData storing the most recent
-                // movies. This will trigger observers of that LiveData, such as the
-                // MoviesRepository.
-                if (response != null && response.getMovies().length != 0) {
-                    Log.d(LOG_TAG, "JSON not null and has " + response.getMovies().length
-                            + " values");
-
-                    // Off of the main thread to update LiveData, we use postValue.
-                    // It posts the update to the main thread.
-                    mDownloadedPopularMovies.postValue(response.getMovies());
-
-                    // If the code reaches this point, we have successfully performed our sync
-                }
-            } catch (Exception e) {
-                // Server probably invalid
-                e.printStackTrace();
+        int pageCount = (MAX_POPULAR_MOVIES_NUMBER + MDB_PAGE_SIZE - 1) / MDB_PAGE_SIZE;
+        boolean fullFetch = mForceFullFetch;
+        mForceFullFetch = false;
+        PageBatch batch = new PageBatch(pageCount);
+
+        for (int page = 1; page <= pageCount; page++) {
+            final int pageNumber = page;
+            boolean queued = mExecutors.networkIO().tryExecute(() ->
+                    completePage(batch, pageNumber, fetchPage(pageNumber, fullFetch, batch),
+                            onFinished),
+                    MeteredExecutor.PRIORITY_BACKGROUND);
+            if (!queued) {
+                // The downloads are too busy: the page fails, so the sync is retried soon
+                batch.mFailedPages.incrementAndGet();
+                completePage(batch, pageNumber, new MovieEntry[0], onFinished);
             }
+        }
+    }
 
-        });
-
-        mExecutors.networkIO().execute(() -> {
-            try {
-
-                // The getUrl method will return the URL that we need to get the a page of popular
-                // movies from the database.
-
-                URL movieRequestUrl = NetworkUtils.getUrl(MDB_FETCH_PAGE2);
-
-                // Use the URL to retrieve the JSON
-                String jsonMovieResponse = NetworkUtils.getResponseFromHttpUrl(movieRequestUrl);
-
-                // Parse the JSON into a list of movies
-                MovieDbResponse response = new MovieDbJsonParser().parse(jsonMovieResponse);
-                Log.d(LOG_TAG, "JSON Parsing finished");
-
+    /**
+     * Stores a fetched page in its batch, and finishes the sync when it was the last one.
+     */
+    private void completePage(PageBatch batch, int pageNumber, MovieEntry[] page,
+                              @Nullable Runnable onFinished) {
+        if (!batch.complete(pageNumber, page)) return;
+
+        // Reported in release builds too, to follow what the fetch ledger saves
+        Log.i(LOG_TAG, "Sync downloaded " + batch.mBytesRead.get() + " bytes, "
+                + batch.mUnchangedPages.get() + " of " + batch.mPages.length
+                + " pages unchanged, about " + batch.getBytesSaved()
+                + " bytes not downloaded");
+        MovieBatch movieBatch = batch.merge();
+        postBatch(movieBatch);
+
+        SyncScheduler.Outcome outcome = batch.mFailedPages.get() != 0
+                ? SyncScheduler.Outcome.FAILED
+                : movieBatch.getMovies().length == 0
+                ? SyncScheduler.Outcome.UNCHANGED
+                : SyncScheduler.Outcome.CHANGED;
+        long delayMillis = mSyncScheduler.onSyncFinished(outcome);
+        // The job running this sync is finished first: the next job has the same tag and
+        // replaces it, so it must not be scheduled while this one still runs
+        if (onFinished != null) onFinished.run();
+        scheduleFetchMoviesSync(delayMillis);
+    }
 
-                // As long as there are movies, update the LiveData storing the most recent
-                // movies. This will trigger observers of that LiveData, such as the
-                // MoviesRepository.
-                if (response != null && response.getMovies().length != 0) {
-                    Log.d(LOG_TAG, "JSON not null and has " + response.getMovies().length
-                            + " values");
+    /**
+     * Downloads and parses one page of popular movies, unless it didn't change since it was last
+     * fetched.
+     *
+     * @param pageNumber The page to fetch, starting at 1
+     * @param fullFetch  Whether the fetch ledger should be ignored
+     * @param batch      The batch the page belongs to, for the sync statistics
+     * @return The movies of the page, an empty array if the page couldn't be fetched, which is
+     * then counted as failed in the batch, null if the page didn't change
+     */
+    @VisibleForTesting
+    @Nullable
+    MovieEntry[] fetchPage(int pageNumber, boolean fullFetch, PageBatch batch) {
+        try {
+            PageFetchEntry lastFetch = mPageFetchDao.getPageFetch(pageNumber);
+            long now = mClock.currentTimeMillis();
+            if (fullFetch || lastFetch == null
+                    || now - lastFetch.getFetched_at() > PAGE_FETCH_MAX_AGE) {
+                lastFetch = null;
+            }
 
-                    // Off of the main thread to update LiveData, we use postValue.
-                    // It posts the update to the main thread.
-                    mDownloadedPopularMovies.postValue(response.getMovies());
+            // The URL that we need to get a page of popular movies from the database
+            URL movieRequestUrl = mPageUrls.apply(pageNumber);
+
+            // Use the URL to stream the JSON and parse it into a list of movies
+            NetworkUtils.HttpResponse<MovieDbResponse> response =
+                    NetworkUtils.getResponseFromHttpUrl(movieRequestUrl,
+                            lastFetch != null ? lastFetch.getEtag() : null,
+                            lastFetch != null ? lastFetch.getLast_modified() : null,
+                            new MovieDbJsonParser()::parse);
+            batch.mBytesRead.addAndGet(response.bytesRead);
+
+            if (response.isNotModified()) {
+                Log.d(LOG_TAG, "Page " + pageNumber + " not modified");
+                batch.pageUnchanged(lastFetch.getByte_count());
+                return null;
+            }
+            Log.d(LOG_TAG, "JSON Parsing finished for page " + pageNumber);
 
-                    // If the code reaches this point, we have successfully performed our sync
-                }
-            } catch (Exception e) {
-                // Server probably invalid
-                e.printStackTrace();
+            if (response.body == null) {
+                batch.mFailedPages.incrementAndGet();
+                return new MovieEntry[0];
             }
 
-        });
+            if (lastFetch != null && response.contentHash.equals(lastFetch.getContent_hash())) {
+                // Same content behind new validators: remember them, but keep the time at
+                // which the page was last stored. The ledger only holds the hashes of stored
+                // pages, so this one can be recorded straight away.
+                Log.d(LOG_TAG, "Page " + pageNumber + " content unchanged");
+                mPageFetchDao.insert(new PageFetchEntry(pageNumber, response.etag,
+                        response.lastModified, response.contentHash, response.bytesRead,
+                        lastFetch.getFetched_at()));
+                batch.pageUnchanged(0);
+                return null;
+            }
 
-        mExecutors.networkIO().execute(() -> {
-            try {
+            // Only recorded once the movies are stored, see MovieBatch
+            batch.mPageFetches[pageNumber - 1] = new PageFetchEntry(pageNumber, response.etag,
+                    response.lastModified, response.contentHash, response.bytesRead, now);
+            return response.body.getMovies();
+        } catch (Exception e) {
+            // Server probably invalid
+            e.printStackTrace();
+        }
+        batch.mFailedPages.incrementAndGet();
+        return new MovieEntry[0];
+    }
 
-                // The getUrl method will return the URL that we need to get the page JSON for the
-                // 20 movies.
+    /**
+     * Updates the LiveData storing the most recent movies. This will trigger observers of that
+     * LiveData, such as the MoviesRepository.
+     */
+    private void postBatch(MovieBatch batch) {
+        // As long as there are movies or changed pages, update the LiveData storing the most
+        // recent movies.
+        if (batch.getMovies().length != 0 || batch.getPageFetches().length != 0) {
+            Log.d(LOG_TAG, "Sync fetched " + batch.getMovies().length
+                    + " new or changed movies");
+
+            // Off of the main thread to update LiveData, we use postValue.
+            // It posts the update to the main thread. Should another batch be posted before the
+            // main thread gets to this one, this one is dropped along with its ledger rows, so
+            // its pages are fetched again by the next sync.
+            mDownloadedPopularMovies.postValue(batch);
+
+            // If the code reaches this point, we have successfully performed our sync
+        }
+    }
 
-                URL movieRequestUrl = NetworkUtils.getUrl(MDB_FETCH_PAGE3);
+    /**
+     * Collects the pages of one sync as they arrive from the network threads.
+     */
+    @VisibleForTesting
+    static final class PageBatch {
+
+        private final MovieEntry[][] mPages;
+        // The ledger rows of the changed pages, stored with their movies
+        private final PageFetchEntry[] mPageFetches;
+        private final AtomicInteger mPending;
+
+        // Sync statistics
+        private final AtomicLong mBytesRead = new AtomicLong();
+        private final AtomicLong mBytesSaved = new AtomicLong();
+        private final AtomicInteger mUnchangedPages = new AtomicInteger();
+        private final AtomicInteger mFailedPages = new AtomicInteger();
+
+        PageBatch(int pageCount) {
+            mPages = new MovieEntry[pageCount][];
+            mPageFetches = new PageFetchEntry[pageCount];
+            mPending = new AtomicInteger(pageCount);
+        }
 
-                // Use the URL to retrieve the JSON
-                String jsonMovieResponse = NetworkUtils.getResponseFromHttpUrl(movieRequestUrl);
+        /**
+         * Stores a fetched page.
+         *
+         * @return true for the one thread which completed the last page of the batch
+         */
+        boolean complete(int pageNumber, MovieEntry[] movies) {
+            mPages[pageNumber - 1] = movies;
+            return mPending.decrementAndGet() == 0;
+        }
 
-                // Parse the JSON into a list of movies
-                MovieDbResponse response = new MovieDbJsonParser().parse(jsonMovieResponse);
-                Log.d(LOG_TAG, "JSON Parsing finished");
+        void pageUnchanged(long bytesSaved) {
+            mUnchangedPages.incrementAndGet();
+            mBytesSaved.addAndGet(bytesSaved);
+        }
 
+        /**
+         * @return The bytes the pages not modified took when they were last downloaded
+         */
+        long getBytesSaved() {
+            return mBytesSaved.get();
+        }
 
-                // As long as there are movies, update the LiveData storing the most recent
-                // movies. This will trigger observers of that LiveData, such as the
-                // MoviesRepository.
-                if (response != null && response.getMovies().length != 0) {
-                    Log.d(LOG_TAG, "JSON not null and has " + response.getMovies().length
-                            + " values");
+        int getUnchangedPageCount() {
+            return mUnchangedPages.get();
+        }
 
-                    // Off of the main thread to update LiveData, we use postValue.
-                    // It posts the update to the main thread.
-                    mDownloadedPopularMovies.postValue(response.getMovies());
+        /**
+         * @return The ledger row of the page, to be stored with its movies, null when the page
+         * wasn't changed or fetched
+         */
+        @Nullable
+        PageFetchEntry getPageFetch(int pageNumber) {
+            return mPageFetches[pageNumber - 1];
+        }
 
-                    // If the code reaches this point, we have successfully performed our sync
+        /**
+         * Concatenates the pages in popularity order. Unchanged pages are left out. A movie can show up twice when the ranking
+         * shifts between two page requests, only its first (most popular) occurrence is kept.
+         */
+        MovieBatch merge() {
+            Map<Integer, MovieEntry> movies = new LinkedHashMap<>();
+            for (MovieEntry[] page : mPages) {
+                if (page == null) continue;
+                for (MovieEntry movie : page) {
+                    if (!movies.containsKey(movie.getId())) {
+                        movies.put(movie.getId(), movie);
+                    }
                 }
-            } catch (Exception e) {
-                // Server probably invalid
-                e.printStackTrace();
             }
-
-        });
-
+            List<PageFetchEntry> pageFetches = new ArrayList<>(mPageFetches.length);
+            for (PageFetchEntry pageFetch : mPageFetches) {
+                if (pageFetch != null) pageFetches.add(pageFetch);
+            }
+            return new MovieBatch(movies.values().toArray(new MovieEntry[movies.size()]),
+                    pageFetches.toArray(new PageFetchEntry[pageFetches.size()]));
+        }
     }
-
-}
\ No newline at end of file
+}
@@ -42,6 +42,6 @@ public class MoviesSyncIntentService extends IntentService {
         Log.d(LOG_TAG, "Intent service started");
         MoviesNetworkDataSource networkDataSource =
                 InjectorUtils.provideNetworkDataSource(this.getApplicationContext());
-        networkDataSource.fetchMovies();
+        networkDataSource.fetchMovies(null);
     }
 }
\ No newline at end of file
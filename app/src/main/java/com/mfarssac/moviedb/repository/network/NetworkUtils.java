@@ -19,14 +19,26 @@
 package com.mfarssac.moviedb.repository.network;
 
 import android.net.Uri;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
 
 /**
  * These utilities will be used to communicate with the movie servers.
@@ -49,6 +61,22 @@ final class NetworkUtils {
     /* string to the API */
     private static final String PAGE_NUMBER = "page";
 
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String CHARSET = "charset";
+
+    // Conditional request headers, validators are sent back as they were received
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+
+    // Read buffers are recycled between requests, one per network thread is enough
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int BUFFER_POOL_SIZE = 4;
+    private static final int GZIP_BUFFER_SIZE = 4 * 1024;
+
     /**
      * Retrieves the proper URL to query for the movie data.
      *
@@ -83,29 +111,200 @@ final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Parses the body of an HTTP response while it is being downloaded. The body is never held
+     * in memory as a whole: bytes are read through a pooled buffer, inflated when the server
+     * answered with gzip Content-Encoding, decoded with the response charset and handed to the
+     * parser as a {@link Reader}.
+     * <p>
+     * The request is conditional when validators from a previous response are given: if the
+     * server answers 304 Not Modified nothing is downloaded and the parser isn't called.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response, null if no response
+     * @param url          The URL to fetch the HTTP response from.
+     * @param etag         ETag of the previous response, if any
+     * @param lastModified Last-Modified date of the previous response, if any
+     * @param parser       Consumer of the response body
+     * @return The parsed body along with the validators and hash of the response
      * @throws IOException Related to network and stream reading
      */
-    static String getResponseFromHttpUrl(URL url) throws IOException {
+    static <T> HttpResponse<T> getResponseFromHttpUrl(URL url, @Nullable String etag,
+                                                      @Nullable String lastModified,
+                                                      ResponseParser<T> parser) throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        // Asking for gzip explicitly means we are also the ones inflating the body
+        urlConnection.setRequestProperty(ACCEPT_ENCODING, GZIP);
+        if (etag != null) urlConnection.setRequestProperty(IF_NONE_MATCH, etag);
+        if (lastModified != null) urlConnection.setRequestProperty(IF_MODIFIED_SINCE, lastModified);
         try {
-            InputStream in = urlConnection.getInputStream();
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new HttpResponse<>(null, etag, lastModified, null, 0);
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            CountingInputStream counter = new CountingInputStream(urlConnection.getInputStream());
+            InputStream in = new PooledBufferedInputStream(counter);
+            if (GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                in = new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            }
+            // The hash is taken on the decoded bytes, so it doesn't depend on the encoding
+            MessageDigest digest = newDigest();
+            in = new DigestInputStream(in, digest);
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            T body;
+            try (Reader reader = new InputStreamReader(in,
+                    charsetOf(urlConnection.getContentType()))) {
+                body = parser.parse(reader);
             }
-            scanner.close();
-            return response;
+            return new HttpResponse<>(body, urlConnection.getHeaderField(ETAG),
+                    urlConnection.getHeaderField(LAST_MODIFIED), toHex(digest.digest()),
+                    counter.getCount());
         } finally {
             urlConnection.disconnect();
         }
     }
-}
\ No newline at end of file
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Reads the charset parameter of a Content-Type header, falling back to UTF-8 which is what
+     * the movie server sends.
+     */
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && CHARSET.equalsIgnoreCase(pair[0].trim())) {
+                    try {
+                        return Charset.forName(pair[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        Log.w(TAG, "Unsupported charset in " + contentType);
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Consumes the body of an HTTP response as it is streamed from the server.
+     */
+    interface ResponseParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    /**
+     * Result of a, possibly conditional, HTTP request.
+     */
+    static final class HttpResponse<T> {
+        // Null when the server answered 304 Not Modified
+        @Nullable
+        final T body;
+        @Nullable
+        final String etag;
+        @Nullable
+        final String lastModified;
+        // Hash of the decoded body, null when the server answered 304 Not Modified
+        @Nullable
+        final String contentHash;
+        // Bytes received from the network, before gzip decoding
+        final long bytesRead;
+
+        HttpResponse(@Nullable T body, @Nullable String etag, @Nullable String lastModified,
+                     @Nullable String contentHash, long bytesRead) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.bytesRead = bytesRead;
+        }
+
+        boolean isNotModified() {
+            return contentHash == null;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the wrapped stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read != -1) mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+
+    /**
+     * {@link BufferedInputStream} whose buffer is borrowed from a small pool shared by all the
+     * network threads and given back on close, so a sync doesn't allocate a new buffer per page.
+     */
+    private static final class PooledBufferedInputStream extends BufferedInputStream {
+
+        private static final BlockingQueue<byte[]> sBufferPool =
+                new ArrayBlockingQueue<>(BUFFER_POOL_SIZE);
+
+        private byte[] mPooledBuffer;
+
+        PooledBufferedInputStream(InputStream in) {
+            // Don't let the super class allocate a buffer of its own size, we provide ours below
+            super(in, 1);
+            byte[] pooled = sBufferPool.poll();
+            mPooledBuffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+            buf = mPooledBuffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                synchronized (this) {
+                    if (mPooledBuffer != null) {
+                        sBufferPool.offer(mPooledBuffer);
+                        mPooledBuffer = null;
+                    }
+                }
+            }
+        }
+    }
+}
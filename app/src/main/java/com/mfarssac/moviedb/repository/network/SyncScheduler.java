@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the next sync runs, from the outcome of the previous ones.
+ * <p>
+ * While the popular movies keep changing they are synced every {@link #MIN_INTERVAL_MILLIS}.
+ * When a sync finds them unchanged, the next one is pushed back by half the time they have been
+ * unchanged for, up to {@link #MAX_INTERVAL_MILLIS}. A failed sync is retried after a delay which
+ * doubles with each failure in a row, from {@link #FIRST_RETRY_DELAY_MILLIS} up to
+ * {@link #MAX_RETRY_DELAY_MILLIS}.
+ * <p>
+ * The state is kept in {@link SharedPreferences}, as syncs usually run in a new process. The time
+ * is read from the given {@link Clock}.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    // Interval at which to sync while the movies keep changing
+    static final long MIN_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(3);
+    // Interval to which the syncs are stretched at most while the movies don't change
+    static final long MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    // The next sync waits the time the movies have been unchanged for, divided by this
+    private static final int UNCHANGED_TIME_DIVIDER = 2;
+    static final long FIRST_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String KEY_NEXT_SYNC_AT = "next_sync_at";
+    private static final String KEY_LAST_CHANGED_AT = "last_changed_at";
+    private static final String KEY_FAILURE_COUNT = "failure_count";
+
+    /**
+     * Source of the current time, in milliseconds since the epoch.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * What a sync found.
+     */
+    enum Outcome {
+        // Some movies were new or changed
+        CHANGED,
+        // All the pages were the ones already stored
+        UNCHANGED,
+        // Some pages couldn't be fetched
+        FAILED
+    }
+
+    private final SharedPreferences mPreferences;
+    private final Clock mClock;
+
+    /**
+     * @param preferences Where the state is kept. It is only read by the scheduling methods,
+     *                    which run in the background.
+     */
+    public SyncScheduler(SharedPreferences preferences, Clock clock) {
+        mPreferences = preferences;
+        mClock = clock;
+    }
+
+    /**
+     * @return The time left until the next sync is due, 0 when it is overdue
+     */
+    synchronized long getDelayMillis() {
+        long nextSyncAt = mPreferences.getLong(KEY_NEXT_SYNC_AT, 0);
+        if (nextSyncAt == 0) return MIN_INTERVAL_MILLIS;
+        // Capped, should the clock have been set back since
+        long delay = nextSyncAt - mClock.currentTimeMillis();
+        return Math.max(0, Math.min(delay, MAX_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Records the outcome of a sync.
+     *
+     * @return The time to wait until the next sync
+     */
+    synchronized long onSyncFinished(Outcome outcome) {
+        long now = mClock.currentTimeMillis();
+        long lastChangedAt = mPreferences.getLong(KEY_LAST_CHANGED_AT, now);
+        int failureCount = mPreferences.getInt(KEY_FAILURE_COUNT, 0);
+
+        long delay;
+        switch (outcome) {
+            case FAILED:
+                failureCount++;
+                delay = getRetryDelayMillis(failureCount);
+                break;
+            case CHANGED:
+                failureCount = 0;
+                lastChangedAt = now;
+                delay = MIN_INTERVAL_MILLIS;
+                break;
+            default:
+                failureCount = 0;
+                delay = Math.max(MIN_INTERVAL_MILLIS, Math.min(MAX_INTERVAL_MILLIS,
+                        (now - lastChangedAt) / UNCHANGED_TIME_DIVIDER));
+                break;
+        }
+
+        mPreferences.edit()
+                .putLong(KEY_NEXT_SYNC_AT, now + delay)
+                .putLong(KEY_LAST_CHANGED_AT, lastChangedAt)
+                .putInt(KEY_FAILURE_COUNT, failureCount)
+                .apply();
+        Log.d(LOG_TAG, "Sync " + outcome + ", next one in "
+                + TimeUnit.MILLISECONDS.toMinutes(delay) + " minutes");
+        return delay;
+    }
+
+    /**
+     * @param failureCount The number of syncs in a row which failed, at least 1
+     */
+    static long getRetryDelayMillis(int failureCount) {
+        // The shift is bounded so that it cannot overflow, the cap applies long before
+        long delay = FIRST_RETRY_DELAY_MILLIS << Math.min(failureCount - 1, 20);
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.TypeConverter;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link TypeConverter} for int[] to byte[]
+ * <p>
+ * This stores the genre_ids in the database as a BLOB of packed 4 byte big-endian ints, but
+ * returns them as an int[]. Both ways are a single bulk copy, without any per genre allocation.
+ */
+class GenreIdsConverter {
+    private static final String LOG_TAG = GenreIdsConverter.class.getSimpleName();
+
+    @TypeConverter
+    public static byte[] genreIdsToBlob(int[] genreIds) {
+        if (genreIds == null) return null;
+        byte[] blob = new byte[genreIds.length * Integer.BYTES];
+        ByteBuffer.wrap(blob).asIntBuffer().put(genreIds);
+        return blob;
+    }
+
+    @TypeConverter
+    public static int[] blobToGenreIds(byte[] blob) {
+        if (blob == null) return null;
+        int[] genreIds = new int[blob.length / Integer.BYTES];
+        ByteBuffer.wrap(blob).asIntBuffer().get(genreIds);
+        return genreIds;
+    }
+
+    /**
+     * Parses the genre ids as they were stored up to version 4, separated by "|". Anything which
+     * isn't a number is skipped.
+     */
+    static int[] parseLegacyGenreIds(String genreIds) {
+        String[] parts = genreIds.split("\\|");
+        int[] ids = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            try {
+                ids[count] = Integer.parseInt(part.trim());
+                count++;
+            } catch (NumberFormatException e) {
+                Log.d(LOG_TAG, "Skipping genre id " + part);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+}
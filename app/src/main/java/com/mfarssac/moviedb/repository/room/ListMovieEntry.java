@@ -22,20 +22,23 @@ package com.mfarssac.moviedb.repository.room;
 
 import com.mfarssac.moviedb.repository.firebase.FirebaseListMovieEntry;
 
+import java.util.Objects;
+
 /**
  * Simplified {@link MovieEntry} which only contains the details needed for the popularity movie list in
- * the {@link com.mfarssac.moviedb.mvvm.list.MovieAdapter}
+ * the {@link com.mfarssac.moviedb.mvvm.list.MovieAdapter}. Numbers are kept as primitives and the
+ * overview, which the list doesn't show, is left out: it is loaded with the whole
+ * {@link MovieEntry} when the movie is opened.
  */
 public class ListMovieEntry {
 
     private int id;
     private String title;
-    private String popularity;
+    private float popularity;
     private String poster_path;
     private String original_language;
     private String original_title;
-    private String overview;
-    private String vote_count;
+    private int vote_count;
 
     public ListMovieEntry(FirebaseListMovieEntry firebaseListMovieEntry) {
 
@@ -45,20 +48,17 @@ public class ListMovieEntry {
         this.poster_path = firebaseListMovieEntry.getPoster_path();
         this.original_language = firebaseListMovieEntry.getOriginal_language();
         this.original_title = firebaseListMovieEntry.getOriginal_title();
-        this.overview = firebaseListMovieEntry.getOverview();
         this.vote_count = firebaseListMovieEntry.getVote_count();
     }
 
-    public ListMovieEntry(int id, String title, String popularity, String poster_path,
-                          String original_language, String original_title, String overview,
-                          String vote_count) {
+    public ListMovieEntry(int id, String title, float popularity, String poster_path,
+                          String original_language, String original_title, int vote_count) {
         this.id = id;
         this.title = title;
         this.popularity = popularity;
         this.poster_path = poster_path;
         this.original_language = original_language;
         this.original_title = original_title;
-        this.overview = overview;
         this.vote_count = vote_count;
     }
 
@@ -70,7 +70,7 @@ public class ListMovieEntry {
         return title;
     }
 
-    public String getPopularity() {
+    public float getPopularity() {
         return popularity;
     }
 
@@ -86,11 +86,31 @@ public class ListMovieEntry {
         return original_title;
     }
 
-    public String getOverview() {
-        return overview;
+    public int getVote_count() {
+        return vote_count;
     }
 
-    public String getVote_count() {
-        return vote_count;
+    /**
+     * Two entries are equal when all of their values are, so that the list only rebinds the
+     * movies which really changed.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ListMovieEntry that = (ListMovieEntry) o;
+        return id == that.id
+                && Float.compare(popularity, that.popularity) == 0
+                && vote_count == that.vote_count
+                && Objects.equals(title, that.title)
+                && Objects.equals(poster_path, that.poster_path)
+                && Objects.equals(original_language, that.original_language)
+                && Objects.equals(original_title, that.original_title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, popularity, poster_path, original_language,
+                original_title, vote_count);
     }
 }
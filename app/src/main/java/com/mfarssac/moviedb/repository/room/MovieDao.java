@@ -20,18 +20,24 @@
 package com.mfarssac.moviedb.repository.room;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteQuery;
 import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.arch.persistence.room.RawQuery;
+import android.arch.persistence.room.Transaction;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * {@link Dao} which provides an api for all data operations with the {@link MovieDatabase}
  */
 @Dao
-public interface MovieDao {
+public abstract class MovieDao {
 
     /**
      * Selects a given number of {@link MovieEntry} entries with better ratings. The LiveData will
@@ -42,7 +48,17 @@ public interface MovieDao {
      * @return {@link LiveData} list of {@link MovieEntry} objects sorted from top ranked
      */
     @Query("SELECT * FROM movie WHERE id= :id")
-    LiveData<MovieEntry> getMovieById(int id);
+    public abstract LiveData<MovieEntry> getMovieById(int id);
+
+    /**
+     * Selects, in a single query, the {@link MovieEntry} entries with the given ids. Ids which
+     * aren't stored are ignored.
+     *
+     * @param ids The primary keys of the movies
+     * @return list of the {@link MovieEntry} objects found, in no particular order
+     */
+    @Query("SELECT * FROM movie WHERE id IN (:ids)")
+    public abstract List<MovieEntry> getMoviesByIds(int[] ids);
 
     /**
      * Selects a given number of {@link MovieEntry} entries with better ratings. The LiveData will
@@ -52,18 +68,184 @@ public interface MovieDao {
      * @param  size The number of movies to select from the database
      * @return {@link LiveData} list of {@link MovieEntry} objects sorted from top ranked
      */
-    @Query("SELECT id, title, popularity, poster_path, original_language, original_title,overview, vote_count, vote_count  FROM movie ORDER BY popularity DESC LIMIT :size")
-    LiveData<List<ListMovieEntry>> getMostPopularMovies(int size);
+    @Query("SELECT id, title, popularity, poster_path, original_language, original_title, vote_count FROM movie ORDER BY popularity DESC, id DESC LIMIT :size")
+    public abstract LiveData<List<ListMovieEntry>> getMostPopularMovies(int size);
+
+    /**
+     * Selects the page of {@link MovieEntry} entries ranked right after a given movie. This is a
+     * keyset query: the popularity index is entered at the cursor instead of skipping an OFFSET,
+     * so every page costs the same however deep the user has scrolled. The cursor is the
+     * popularity and id of the last movie already loaded, the id breaking ties between equal
+     * popularities. As the cursor is passed by value, the page is found even when that movie has
+     * since been deleted.
+     * <p>
+     * The {@code popularity <= :afterPopularity} bound is what lets SQLite search the index from
+     * the cursor: the OR alone would make it scan the index from the top.
+     *
+     * @param afterPopularity The popularity of the last movie of the previous page
+     * @param afterId         The id of the last movie of the previous page
+     * @param pageSize        The number of movies to select from the database
+     * @return list of {@link ListMovieEntry} objects sorted from top ranked
+     */
+    @Query("SELECT id, title, popularity, poster_path, original_language, original_title, vote_count FROM movie "
+            + "WHERE popularity <= :afterPopularity "
+            + "AND (popularity < :afterPopularity OR id < :afterId) "
+            + "ORDER BY popularity DESC, id DESC LIMIT :pageSize")
+    public abstract List<ListMovieEntry> getMostPopularMoviesAfter(float afterPopularity,
+                                                                   int afterId, int pageSize);
+
+    /**
+     * Selects the page of {@link MovieEntry} entries starting with a given movie, which is
+     * included. This is the keyset query of {@link #getMostPopularMoviesAfter}, with the cursor
+     * included.
+     *
+     * @param fromPopularity The popularity of the first movie of the page
+     * @param fromId         The id of the first movie of the page
+     * @param pageSize       The number of movies to select from the database
+     * @return list of {@link ListMovieEntry} objects sorted from top ranked
+     */
+    @Query("SELECT id, title, popularity, poster_path, original_language, original_title, vote_count FROM movie "
+            + "WHERE popularity <= :fromPopularity "
+            + "AND (popularity < :fromPopularity OR id <= :fromId) "
+            + "ORDER BY popularity DESC, id DESC LIMIT :pageSize")
+    public abstract List<ListMovieEntry> getMostPopularMoviesFrom(float fromPopularity,
+                                                                  int fromId, int pageSize);
 
     /**
-     * Inserts a list of {@link MovieEntry} into the movieEntries table. If there is a conflicting id
-     * the {@link OnConflictStrategy} instructs to replace the popularMovie. The required uniqueness
-     * of these values is defined in the {@link MovieEntry}.
+     * Selects the page of {@link MovieEntry} entries ranked right before a given movie, as the
+     * user scrolls back up. This is the keyset query of {@link #getMostPopularMoviesAfter} the
+     * other way round: the popularity index is searched upwards from the cursor.
+     *
+     * @param beforePopularity The popularity of the first movie of the next page
+     * @param beforeId         The id of the first movie of the next page
+     * @param pageSize         The number of movies to select from the database
+     * @return list of {@link ListMovieEntry} objects sorted from bottom ranked, closest first
+     */
+    @Query("SELECT id, title, popularity, poster_path, original_language, original_title, vote_count FROM movie "
+            + "WHERE popularity >= :beforePopularity "
+            + "AND (popularity > :beforePopularity OR id > :beforeId) "
+            + "ORDER BY popularity ASC, id ASC LIMIT :pageSize")
+    public abstract List<ListMovieEntry> getMostPopularMoviesBefore(float beforePopularity,
+                                                                    int beforeId, int pageSize);
+
+    /**
+     * Selects a given number of the most popular movies in any of the given genres. Each genre is
+     * read from the genre and popularity index in ranking order, up to the number of movies
+     * asked for, so a genre only costs as many rows as are returned, however many movies it
+     * holds. Only these few rows per genre are then merged and sorted, never all the links of
+     * the genres.
+     *
+     * @param genreIds The ids of the genres
+     * @param size     The number of movies to select from the database
+     * @return {@link LiveData} list of {@link ListMovieEntry} objects sorted from top ranked
+     */
+    public LiveData<List<ListMovieEntry>> getMostPopularMoviesInGenres(int[] genreIds, int size) {
+        return getMostPopularMoviesInGenres(mostPopularMoviesInGenresQuery(genreIds, size));
+    }
+
+    /**
+     * Builds the query of {@link #getMostPopularMoviesInGenres(int[], int)}.
+     */
+    static SupportSQLiteQuery mostPopularMoviesInGenresQuery(int[] genreIds, int size) {
+        StringBuilder topOfGenres = new StringBuilder();
+        Object[] args = new Object[genreIds.length * 2 + 1];
+        for (int i = 0; i < genreIds.length; i++) {
+            if (i > 0) topOfGenres.append(" UNION ALL ");
+            topOfGenres.append("SELECT movie_id FROM (SELECT movie_id FROM movie_genre "
+                    + "WHERE genre_id = ? ORDER BY popularity DESC, movie_id DESC LIMIT ?)");
+            args[i * 2] = genreIds[i];
+            args[i * 2 + 1] = size;
+        }
+        args[args.length - 1] = size;
+        // Without any genre no movie matches
+        if (genreIds.length == 0) topOfGenres.append("SELECT NULL");
+
+        return new SimpleSQLiteQuery("SELECT id, title, popularity, poster_path, "
+                + "original_language, original_title, vote_count FROM movie "
+                + "WHERE id IN (" + topOfGenres + ") "
+                + "ORDER BY popularity DESC, id DESC LIMIT ?", args);
+    }
+
+    @RawQuery(observedEntities = {MovieEntry.class, MovieGenreEntry.class})
+    abstract LiveData<List<ListMovieEntry>> getMostPopularMoviesInGenres(SupportSQLiteQuery query);
+
+    /**
+     * Searches the titles, original titles and overviews of the movies for all the words of the
+     * given text, the last letters of each word being optional. Movies whose title matches come
+     * first, then the others, each sorted by popularity. The LiveData will be kept in sync with
+     * the database.
+     *
+     * @param text The text typed by the user
+     * @param size The maximum number of movies to select from the database
+     * @return {@link LiveData} list of {@link ListMovieEntry} objects, best matches first
+     */
+    public LiveData<List<ListMovieEntry>> searchMovies(String text, int size) {
+        return searchMovies(searchQuery(text, size));
+    }
+
+    /**
+     * Builds the query of {@link #searchMovies(String, int)}.
+     */
+    static SupportSQLiteQuery searchQuery(String text, int size) {
+        // Only letters and digits are kept, the FTS query syntax can't be typed in
+        StringBuilder anyColumn = new StringBuilder();
+        StringBuilder titleColumn = new StringBuilder();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            anyColumn.append(word).append("* ");
+            titleColumn.append("title:").append(word).append("* ");
+        }
+        // Without any word the MATCH is empty and matches no movie
+        String match = anyColumn.toString().trim();
+
+        String search = MovieDatabase.MOVIE_SEARCH_TABLE;
+        return new SimpleSQLiteQuery("SELECT movie.id, movie.title, movie.popularity, "
+                + "movie.poster_path, movie.original_language, movie.original_title, "
+                + "movie.vote_count FROM " + search + " INNER JOIN movie ON movie.id = " + search
+                + ".docid WHERE " + search + " MATCH ? ORDER BY movie.id IN (SELECT docid FROM "
+                + search + " WHERE " + search + " MATCH ?) DESC, movie.popularity DESC, "
+                + "movie.id DESC LIMIT ?",
+                new Object[]{match, titleColumn.toString().trim(), size});
+    }
+
+    @RawQuery(observedEntities = MovieEntry.class)
+    abstract LiveData<List<ListMovieEntry>> searchMovies(SupportSQLiteQuery query);
+
+    /**
+     * Inserts a list of {@link MovieEntry} into the movieEntries table, and links them to their
+     * genres in the same transaction. If there is a conflicting id the {@link OnConflictStrategy}
+     * instructs to replace the popularMovie. The required uniqueness of these values is defined in
+     * the {@link MovieEntry}.
      *
      * @param movieEntries A list of movieEntries to insert
      */
+    @Transaction
+    public void bulkInsert(MovieEntry... movieEntries) {
+        insertMovies(movieEntries);
+
+        int[] movieIds = new int[movieEntries.length];
+        List<MovieGenreEntry> links = new ArrayList<>();
+        for (int i = 0; i < movieEntries.length; i++) {
+            MovieEntry movie = movieEntries[i];
+            movieIds[i] = movie.getId();
+            if (movie.getGenre_ids() == null) continue;
+            for (int genreId : movie.getGenre_ids()) {
+                links.add(new MovieGenreEntry(movie.getId(), genreId, movie.getPopularity()));
+            }
+        }
+        // The genres of a movie may have changed, its links are rewritten
+        deleteMovieGenres(movieIds);
+        insertMovieGenres(links);
+    }
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void bulkInsert(MovieEntry... movieEntries);
+    abstract void insertMovies(MovieEntry... movieEntries);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void insertMovieGenres(List<MovieGenreEntry> movieGenres);
+
+    @Query("DELETE FROM movie_genre WHERE movie_id IN (:movieIds)")
+    abstract void deleteMovieGenres(int[] movieIds);
 
     /**
      * Deletes the movies not within the offset number of movies.
@@ -71,7 +253,29 @@ public interface MovieDao {
      * @param moviesToKeep The number of top ranked movies we want to keep in the database
      */
     @Query("DELETE FROM movie WHERE id NOT IN (SELECT id FROM movie ORDER BY popularity DESC LIMIT :moviesToKeep)")
-    void deleteOldPopularMovies(int moviesToKeep);
+    public abstract void deleteOldPopularMovies(int moviesToKeep);
+
+    /**
+     * Deletes the movies which haven't been part of a sync since the given time.
+     *
+     * @param timestamp The oldest fetch time, in milliseconds, of the movies to keep
+     */
+    @Query("DELETE FROM movie WHERE last_fetched < :timestamp")
+    public abstract void deleteMoviesFetchedBefore(long timestamp);
+
+    /**
+     * Estimates the space taken by the movie rows: the bytes of their text and genre ids, plus
+     * 40 bytes for their five numbers. The indexes and the other tables, such as the search
+     * index or the fetch ledger, are left out, so that only the movies themselves are weighed.
+     *
+     * @return size in bytes of the movies
+     */
+    @Query("SELECT COALESCE(SUM(40 + IFNULL(LENGTH(genre_ids), 0) + LENGTH(CAST("
+            + "IFNULL(video, '') || IFNULL(title, '') || IFNULL(poster_path, '') "
+            + "|| IFNULL(original_language, '') || IFNULL(original_title, '') "
+            + "|| IFNULL(backdrop_path, '') || IFNULL(adult, '') || IFNULL(overview, '') "
+            + "|| IFNULL(release_date, '') AS BLOB))), 0) FROM movie")
+    public abstract long getMoviesBytes();
 
     /**
      * Selects all table elements and counts them
@@ -79,6 +283,6 @@ public interface MovieDao {
      * @return {@link int} size of table
      */
     @Query("SELECT COUNT(popularity) FROM movie")
-    int getMostPopularMoviesSize();
+    public abstract int getMostPopularMoviesSize();
 
 }
@@ -19,45 +19,259 @@
 
 package com.mfarssac.moviedb.repository.room;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
+import com.mfarssac.moviedb.Singleton;
+
 /**
  * {@link MovieDatabase} database for the application including a table for {@link MovieEntry}
- * with the DAO {@link MovieDao}.
+ * and one for {@link MovieGenreEntry} with the DAO {@link MovieDao}, a table for
+ * {@link PageFetchEntry} with the DAO {@link PageFetchDao}, and a table for {@link PosterEntry}
+ * with the DAO {@link PosterDao}.
  */
 
 // List of the entry classes and associated TypeConverters
-@Database(entities = {MovieEntry.class}, version = 1, exportSchema = false)
-@TypeConverters(StringArrayConverter.class)
+@Database(entities = {MovieEntry.class, MovieGenreEntry.class, PageFetchEntry.class,
+        PosterEntry.class}, version = 8, exportSchema = false)
+@TypeConverters(GenreIdsConverter.class)
 public abstract class MovieDatabase extends RoomDatabase {
 
     private static final String LOG_TAG = MovieDatabase.class.getSimpleName();
     private static final String DATABASE_NAME = "movie";
-    public static final String MOVIEDB_API_IMAGES_URL =
-            "https://image.tmdb.org/t/p/w185";
+    // Full-text index of the movies, see createMovieSearch
+    static final String MOVIE_SEARCH_TABLE = "movie_fts";
+
+    /**
+     * Version 2 stores vote_count, vote_average and popularity as numbers instead of text, so
+     * that sorting by popularity is numeric, and indexes the popularity column. SQLite can't
+     * change the type of a column, so the table is copied into a new one.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `movie_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `video` TEXT, "
+                    + "`vote_count` INTEGER NOT NULL, `vote_average` REAL NOT NULL, "
+                    + "`title` TEXT, `popularity` REAL NOT NULL, `poster_path` TEXT, "
+                    + "`original_language` TEXT, `original_title` TEXT, `genre_ids` TEXT, "
+                    + "`backdrop_path` TEXT, `adult` TEXT, `overview` TEXT, `release_date` TEXT)");
+            database.execSQL("INSERT INTO `movie_new` (`id`, `video`, `vote_count`, "
+                    + "`vote_average`, `title`, `popularity`, `poster_path`, `original_language`, "
+                    + "`original_title`, `genre_ids`, `backdrop_path`, `adult`, `overview`, "
+                    + "`release_date`) SELECT `id`, `video`, CAST(IFNULL(`vote_count`, 0) AS INTEGER), "
+                    + "CAST(IFNULL(`vote_average`, 0) AS REAL), `title`, "
+                    + "CAST(IFNULL(`popularity`, 0) AS REAL), `poster_path`, `original_language`, "
+                    + "`original_title`, `genre_ids`, `backdrop_path`, `adult`, `overview`, "
+                    + "`release_date` FROM `movie`");
+            database.execSQL("DROP TABLE `movie`");
+            database.execSQL("ALTER TABLE `movie_new` RENAME TO `movie`");
+            database.execSQL("CREATE UNIQUE INDEX `index_movie_original_title` "
+                    + "ON `movie` (`original_title`)");
+            database.execSQL("CREATE INDEX `index_movie_popularity` ON `movie` (`popularity`)");
+        }
+    };
 
+    /**
+     * Version 3 records when each movie was last fetched, so that movies can be expired by age.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `movie` ADD COLUMN `last_fetched` INTEGER NOT NULL DEFAULT 0");
+            // Movies already stored count as fetched now, rather than being expired right away
+            database.execSQL("UPDATE `movie` SET `last_fetched` = strftime('%s', 'now') * 1000");
+        }
+    };
+
+    /**
+     * Version 4 adds the ledger of fetched pages used to make conditional requests.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `page_fetch` (`page` INTEGER NOT NULL, "
+                    + "`etag` TEXT, `last_modified` TEXT, `content_hash` TEXT, "
+                    + "`byte_count` INTEGER NOT NULL, `fetched_at` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`page`))");
+        }
+    };
+
+    /**
+     * Version 5 stores the genre_ids as a BLOB of packed ints instead of "|" separated text. The
+     * table is copied into a new one, and the genres of each movie converted on the way.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `movie_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `video` TEXT, "
+                    + "`vote_count` INTEGER NOT NULL, `vote_average` REAL NOT NULL, "
+                    + "`title` TEXT, `popularity` REAL NOT NULL, `poster_path` TEXT, "
+                    + "`original_language` TEXT, `original_title` TEXT, `genre_ids` BLOB, "
+                    + "`backdrop_path` TEXT, `adult` TEXT, `overview` TEXT, `release_date` TEXT, "
+                    + "`last_fetched` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO `movie_new` (`id`, `video`, `vote_count`, "
+                    + "`vote_average`, `title`, `popularity`, `poster_path`, `original_language`, "
+                    + "`original_title`, `backdrop_path`, `adult`, `overview`, `release_date`, "
+                    + "`last_fetched`) SELECT `id`, `video`, `vote_count`, `vote_average`, `title`, "
+                    + "`popularity`, `poster_path`, `original_language`, `original_title`, "
+                    + "`backdrop_path`, `adult`, `overview`, `release_date`, `last_fetched` "
+                    + "FROM `movie`");
+            try (Cursor cursor = database.query(
+                    "SELECT `id`, `genre_ids` FROM `movie` WHERE `genre_ids` IS NOT NULL")) {
+                while (cursor.moveToNext()) {
+                    byte[] genreIds = GenreIdsConverter.genreIdsToBlob(
+                            GenreIdsConverter.parseLegacyGenreIds(cursor.getString(1)));
+                    database.execSQL("UPDATE `movie_new` SET `genre_ids` = ? WHERE `id` = ?",
+                            new Object[]{genreIds, cursor.getInt(0)});
+                }
+            }
+            database.execSQL("DROP TABLE `movie`");
+            database.execSQL("ALTER TABLE `movie_new` RENAME TO `movie`");
+            database.execSQL("CREATE UNIQUE INDEX `index_movie_original_title` "
+                    + "ON `movie` (`original_title`)");
+            database.execSQL("CREATE INDEX `index_movie_popularity` ON `movie` (`popularity`)");
+        }
+    };
+
+    /**
+     * Version 6 adds the table linking movies to their genres, filled from the genre_ids of the
+     * movies already stored.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `movie_genre` ("
+                    + "`movie_id` INTEGER NOT NULL, `genre_id` INTEGER NOT NULL, "
+                    + "`popularity` REAL NOT NULL, PRIMARY KEY(`movie_id`, `genre_id`), "
+                    + "FOREIGN KEY(`movie_id`) REFERENCES `movie`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX `index_movie_genre_genre_id_popularity_movie_id` "
+                    + "ON `movie_genre` (`genre_id`, `popularity`, `movie_id`)");
+            try (Cursor cursor = database.query("SELECT `id`, `genre_ids`, `popularity` "
+                    + "FROM `movie` WHERE `genre_ids` IS NOT NULL")) {
+                while (cursor.moveToNext()) {
+                    for (int genreId : GenreIdsConverter.blobToGenreIds(cursor.getBlob(1))) {
+                        database.execSQL("INSERT OR IGNORE INTO `movie_genre` "
+                                + "(`movie_id`, `genre_id`, `popularity`) VALUES (?, ?, ?)",
+                                new Object[]{cursor.getInt(0), genreId, cursor.getFloat(2)});
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * Version 7 adds the full-text index of the movies, see {@link #createMovieSearch}.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            createMovieSearch(database);
+            database.execSQL("INSERT INTO `" + MOVIE_SEARCH_TABLE + "`(`" + MOVIE_SEARCH_TABLE
+                    + "`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * Version 8 adds the table of the posters stored for offline use.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `poster` (`poster_path` TEXT NOT NULL, "
+                    + "`content_hash` TEXT, `byte_count` INTEGER NOT NULL, "
+                    + "`stored_at` INTEGER NOT NULL, PRIMARY KEY(`poster_path`))");
+        }
+    };
+
+    /**
+     * Creates the FTS4 table indexing the title, original_title and overview of the movies, and
+     * the triggers keeping it in step with the movie table, within the transaction of each write.
+     * Room doesn't know about either, so they are created here rather than from an entity. The
+     * index reads its text from the movie table, so a migration recreating that table must call
+     * this again.
+     * <p>
+     * A movie replaced on insert is removed from the index before the insert: the delete of the
+     * REPLACE conflict resolution doesn't fire the delete trigger.
+     */
+    private static void createMovieSearch(SupportSQLiteDatabase database) {
+        String insertNew = "INSERT INTO `" + MOVIE_SEARCH_TABLE + "`(`docid`, `title`, "
+                + "`original_title`, `overview`) VALUES (new.`id`, new.`title`, "
+                + "new.`original_title`, new.`overview`); END";
+        String deleteOld = "DELETE FROM `" + MOVIE_SEARCH_TABLE + "` WHERE `docid` = old.`id`; END";
+
+        database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + MOVIE_SEARCH_TABLE + "` "
+                + "USING fts4(content=\"movie\", title, original_title, overview, "
+                + "tokenize=unicode61)");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `movie_fts_before_insert` "
+                + "BEFORE INSERT ON `movie` BEGIN DELETE FROM `" + MOVIE_SEARCH_TABLE + "` "
+                + "WHERE `docid` IN (SELECT `id` FROM `movie` WHERE `id` = new.`id` "
+                + "OR `original_title` = new.`original_title`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `movie_fts_after_insert` "
+                + "AFTER INSERT ON `movie` BEGIN " + insertNew);
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `movie_fts_before_update` "
+                + "BEFORE UPDATE ON `movie` BEGIN " + deleteOld);
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `movie_fts_after_update` "
+                + "AFTER UPDATE ON `movie` BEGIN " + insertNew);
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `movie_fts_before_delete` "
+                + "BEFORE DELETE ON `movie` BEGIN " + deleteOld);
+    }
 
     // For Singleton instantiation
-    private static final Object LOCK = new Object();
-    private static MovieDatabase sInstance;
+    private static final Singleton<MovieDatabase> INSTANCE = new Singleton<>();
 
     public static MovieDatabase getInstance(Context context) {
         Log.d(LOG_TAG, "Getting the database");
-        if (sInstance == null) {
-            synchronized (LOCK) {
-                sInstance = Room.databaseBuilder(context.getApplicationContext(),
-                        MovieDatabase.class, MovieDatabase.DATABASE_NAME).build();
-                Log.d(LOG_TAG, "Made new database");
-            }
-        }
-        return sInstance;
+        return INSTANCE.get(() -> {
+            MovieDatabase database = create(context, DATABASE_NAME);
+            // Building doesn't open the database: it is opened, and migrated if needed, in
+            // the background right away rather than by the first query
+            database.getQueryExecutor().execute(() ->
+                    database.getOpenHelper().getWritableDatabase());
+            Log.d(LOG_TAG, "Made new database");
+            return database;
+        });
+    }
+
+    /**
+     * Builds a database with the schema, migrations and settings of the app's one, stored under
+     * the given name. The app only uses the one of {@link #getInstance}, the instrumented tests
+     * build their own.
+     *
+     * @param context Context of the app
+     * @param name    Name of the database file
+     * @return The database, which is opened by the first query
+     */
+    @VisibleForTesting
+    public static MovieDatabase create(Context context, String name) {
+        return Room.databaseBuilder(context.getApplicationContext(), MovieDatabase.class, name)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8)
+                .addCallback(new Callback() {
+                    @Override
+                    public void onCreate(SupportSQLiteDatabase db) {
+                        createMovieSearch(db);
+                    }
+                })
+                // Readers see the last committed data while a sync is being written
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
     }
 
     // The associated DAOs for the database
     public abstract MovieDao MoviesDao();
+
+    public abstract PageFetchDao PageFetchDao();
+
+    public abstract PosterDao PosterDao();
 }
@@ -25,12 +25,17 @@ import android.arch.persistence.room.PrimaryKey;
 import android.arch.persistence.room.Room;
 import android.support.annotation.NonNull;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 /**
  * Defines the schema of a table in {@link Room} for a single movie
  * The date is used as an {@link Index} so that its uniqueness can be ensured. Indexes
- * also allow for fast lookup for the column.
+ * also allow for fast lookup for the column. The popularity is indexed too, as every list query
+ * and the trimming of old movies walk the table by popularity.
  */
-@Entity(tableName = "movie", indices = {@Index(value = {"original_title"}, unique = true)})
+@Entity(tableName = "movie", indices = {@Index(value = {"original_title"}, unique = true),
+        @Index(value = {"popularity"})})
 public class MovieEntry {
 
     /**
@@ -40,24 +45,26 @@ public class MovieEntry {
     @NonNull
     private int id;
     private String video;
-    private String vote_count;
-    private String vote_average;
+    private int vote_count;
+    private float vote_average;
     private String title;
-    private String popularity;
+    private float popularity;
     private String poster_path;
     private String original_language;
     private String original_title;
-    private String[] genre_ids;
+    private int[] genre_ids;
     private String backdrop_path;
     private String adult;
     private String overview;
     private String release_date;
+    // When the movie was last seen in a sync, used to expire movies which dropped out of the charts
+    private long last_fetched;
 
-    public String getVote_count() {
+    public int getVote_count() {
         return vote_count;
     }
 
-    public void setVote_count(String vote_count) {
+    public void setVote_count(int vote_count) {
         this.vote_count = vote_count;
     }
 
@@ -69,11 +76,11 @@ public class MovieEntry {
         this.video = video;
     }
 
-    public String getVote_average() {
+    public float getVote_average() {
         return vote_average;
     }
 
-    public void setVote_average(String vote_average) {
+    public void setVote_average(float vote_average) {
         this.vote_average = vote_average;
     }
 
@@ -85,11 +92,11 @@ public class MovieEntry {
         this.title = title;
     }
 
-    public String getPopularity() {
+    public float getPopularity() {
         return popularity;
     }
 
-    public void setPopularity(String popularity) {
+    public void setPopularity(float popularity) {
         this.popularity = popularity;
     }
 
@@ -117,11 +124,11 @@ public class MovieEntry {
         this.original_title = original_title;
     }
 
-    public String[] getGenre_ids() {
+    public int[] getGenre_ids() {
         return genre_ids;
     }
 
-    public void setGenre_ids(String[] genre_ids) {
+    public void setGenre_ids(int[] genre_ids) {
         this.genre_ids = genre_ids;
     }
 
@@ -157,8 +164,16 @@ public class MovieEntry {
         this.release_date = release_date;
     }
 
-    public MovieEntry(int id, String video, String vote_average, String title, String popularity,
-                      String poster_path, String original_language, String original_title, String[] genre_ids,
+    public long getLast_fetched() {
+        return last_fetched;
+    }
+
+    public void setLast_fetched(long last_fetched) {
+        this.last_fetched = last_fetched;
+    }
+
+    public MovieEntry(int id, String video, int vote_count, float vote_average, String title, float popularity,
+                      String poster_path, String original_language, String original_title, int[] genre_ids,
                       String backdrop_path, String adult, String overview, String release_date)
     {
         this.id = id;
@@ -181,11 +196,43 @@ public class MovieEntry {
         return id;
     }
 
+    /**
+     * Two entries are equal when all of their values are, so that a movie read again unchanged
+     * isn't displayed again.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MovieEntry that = (MovieEntry) o;
+        return id == that.id
+                && vote_count == that.vote_count
+                && Float.compare(vote_average, that.vote_average) == 0
+                && Float.compare(popularity, that.popularity) == 0
+                && last_fetched == that.last_fetched
+                && Objects.equals(video, that.video)
+                && Objects.equals(title, that.title)
+                && Objects.equals(poster_path, that.poster_path)
+                && Objects.equals(original_language, that.original_language)
+                && Objects.equals(original_title, that.original_title)
+                && Arrays.equals(genre_ids, that.genre_ids)
+                && Objects.equals(backdrop_path, that.backdrop_path)
+                && Objects.equals(adult, that.adult)
+                && Objects.equals(overview, that.overview)
+                && Objects.equals(release_date, that.release_date);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(id, title, popularity, poster_path, original_title, vote_count,
+                release_date, last_fetched) + Arrays.hashCode(genre_ids);
+    }
+
 
     @Override
     public String toString()
     {
-        return "ClassPojo [vote_average = "+vote_average+", backdrop_path = "+backdrop_path+", adult = "+adult+", id = "+id+", title = "+title+", overview = "+overview+", original_language = "+original_language+", genre_ids = "+genre_ids+", release_date = "+release_date+", original_title = "+original_title+", vote_count = "+vote_count+", poster_path = "+poster_path+", video = "+video+", popularity = "+popularity+"]";
+        return "ClassPojo [vote_average = "+vote_average+", backdrop_path = "+backdrop_path+", adult = "+adult+", id = "+id+", title = "+title+", overview = "+overview+", original_language = "+original_language+", genre_ids = "+Arrays.toString(genre_ids)+", release_date = "+release_date+", original_title = "+original_title+", vote_count = "+vote_count+", poster_path = "+poster_path+", video = "+video+", popularity = "+popularity+"]";
     }
 
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.Room;
+
+/**
+ * Defines the schema of a table in {@link Room} linking each movie to each of its genres. The
+ * popularity of the movie is copied into the link, so that the {@link Index} on genre and
+ * popularity hands out the most popular movies of a genre in order, without reading the other
+ * movies of the genre. Links are deleted with their movie.
+ */
+@Entity(tableName = "movie_genre", primaryKeys = {"movie_id", "genre_id"},
+        foreignKeys = @ForeignKey(entity = MovieEntry.class, parentColumns = "id",
+                childColumns = "movie_id", onDelete = ForeignKey.CASCADE),
+        indices = {@Index(value = {"genre_id", "popularity", "movie_id"})})
+public class MovieGenreEntry {
+
+    private int movie_id;
+    private int genre_id;
+    private float popularity;
+
+    public MovieGenreEntry(int movie_id, int genre_id, float popularity) {
+        this.movie_id = movie_id;
+        this.genre_id = genre_id;
+        this.popularity = popularity;
+    }
+
+    public int getMovie_id() {
+        return movie_id;
+    }
+
+    public int getGenre_id() {
+        return genre_id;
+    }
+
+    public float getPopularity() {
+        return popularity;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+/**
+ * {@link Dao} which provides an api for the ledger of fetched pages in the {@link MovieDatabase}
+ */
+@Dao
+public interface PageFetchDao {
+
+    /**
+     * Selects how a page of popular movies was last fetched.
+     *
+     * @param page The page number
+     * @return The {@link PageFetchEntry} of the page, null if it was never fetched
+     */
+    @Query("SELECT * FROM page_fetch WHERE page = :page")
+    PageFetchEntry getPageFetch(int page);
+
+    /**
+     * Records how pages were fetched, replacing what was known of them before.
+     *
+     * @param pageFetchEntries The fetches to record
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(PageFetchEntry... pageFetchEntries);
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.arch.persistence.room.Room;
+
+/**
+ * Defines the schema of a table in {@link Room} recording how each page of popular movies was
+ * last fetched: the HTTP validators sent back on the next sync, and a hash of the content to tell
+ * whether a page actually changed when the server doesn't support conditional requests.
+ */
+@Entity(tableName = "page_fetch")
+public class PageFetchEntry {
+
+    /**
+     * The page number of the popular movies API is the primary key.
+     */
+    @PrimaryKey
+    private int page;
+    private String etag;
+    private String last_modified;
+    private String content_hash;
+    // Bytes downloaded the last time the page was received in full
+    private long byte_count;
+    private long fetched_at;
+
+    public PageFetchEntry(int page, String etag, String last_modified, String content_hash,
+                          long byte_count, long fetched_at) {
+        this.page = page;
+        this.etag = etag;
+        this.last_modified = last_modified;
+        this.content_hash = content_hash;
+        this.byte_count = byte_count;
+        this.fetched_at = fetched_at;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLast_modified() {
+        return last_modified;
+    }
+
+    public String getContent_hash() {
+        return content_hash;
+    }
+
+    public long getByte_count() {
+        return byte_count;
+    }
+
+    public long getFetched_at() {
+        return fetched_at;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+/**
+ * {@link Dao} which provides an api for the posters stored in the {@link MovieDatabase}
+ */
+@Dao
+public interface PosterDao {
+
+    /**
+     * @return All the {@link PosterEntry} stored, leaving out the posters which failed
+     */
+    @Query("SELECT * FROM poster WHERE content_hash IS NOT NULL")
+    List<PosterEntry> getPosters();
+
+    /**
+     * @param retryFailedBefore The time, in milliseconds, before which posters which failed for
+     *                          good are looked for again
+     * @return The poster_paths of the stored movies whose poster isn't stored
+     */
+    @Query("SELECT DISTINCT poster_path FROM movie WHERE poster_path IS NOT NULL "
+            + "AND poster_path NOT IN (SELECT poster_path FROM poster "
+            + "WHERE content_hash IS NOT NULL OR stored_at >= :retryFailedBefore)")
+    List<String> getMissingPosterPaths(long retryFailedBefore);
+
+    /**
+     * Records stored posters, replacing what was known of them before.
+     *
+     * @param posterEntries The posters to record
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(List<PosterEntry> posterEntries);
+
+    /**
+     * Deletes the posters which no movie uses anymore, so that they follow the retention of the
+     * movies.
+     *
+     * @return The number of posters deleted
+     */
+    @Query("DELETE FROM poster WHERE poster_path NOT IN "
+            + "(SELECT poster_path FROM movie WHERE poster_path IS NOT NULL)")
+    int deleteUnreferenced();
+}
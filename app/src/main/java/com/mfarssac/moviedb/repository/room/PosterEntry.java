@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.arch.persistence.room.Room;
+import android.support.annotation.NonNull;
+
+/**
+ * Defines the schema of a table in {@link Room} recording the posters stored for offline use: the
+ * poster of each poster_path of the movie table is a file named after the hash of its content.
+ * A poster which can't be downloaded at all is recorded without content hash, stored_at then
+ * being the time it failed.
+ */
+@Entity(tableName = "poster")
+public class PosterEntry {
+
+    /**
+     * The TMDB path of the poster, as found in the movie table, is the primary key.
+     */
+    @PrimaryKey
+    @NonNull
+    private String poster_path;
+    private String content_hash;
+    private long byte_count;
+    private long stored_at;
+
+    public PosterEntry(@NonNull String poster_path, String content_hash, long byte_count,
+                       long stored_at) {
+        this.poster_path = poster_path;
+        this.content_hash = content_hash;
+        this.byte_count = byte_count;
+        this.stored_at = stored_at;
+    }
+
+    @NonNull
+    public String getPoster_path() {
+        return poster_path;
+    }
+
+    public String getContent_hash() {
+        return content_hash;
+    }
+
+    public long getByte_count() {
+        return byte_count;
+    }
+
+    public long getStored_at() {
+        return stored_at;
+    }
+}
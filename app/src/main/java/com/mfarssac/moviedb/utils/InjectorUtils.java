@@ -22,31 +22,88 @@ package com.mfarssac.moviedb.utils;
 import android.content.Context;
 
 import com.mfarssac.moviedb.AppExecutors;
+import com.mfarssac.moviedb.Lazy;
 import com.mfarssac.moviedb.mvvm.detail.DetailViewModelFactory;
 import com.mfarssac.moviedb.mvvm.list.MainViewModelFactory;
 import com.mfarssac.moviedb.repository.MoviesRepository;
+import com.mfarssac.moviedb.repository.RetentionPolicy;
+import com.mfarssac.moviedb.repository.RetentionSweeper;
+import com.mfarssac.moviedb.repository.images.PosterLoader;
+import com.mfarssac.moviedb.repository.images.PosterStore;
 import com.mfarssac.moviedb.repository.network.MoviesNetworkDataSource;
+import com.mfarssac.moviedb.repository.network.SyncScheduler;
 import com.mfarssac.moviedb.repository.room.MovieDatabase;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Provides static methods to inject the various classes needed for the MovieDB
  */
 public class InjectorUtils {
 
-    public static MoviesRepository provideRepository(Context context) {
+    // Size of the offline catalog: the movies which dropped out of the most popular ones are
+    // kept for a month, up to a thousand of them and 10 MB of movies
+    private static final int RETAINED_MOVIES_NUMBER = 1000;
+    private static final long RETAINED_MOVIES_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+    private static final long RETAINED_MOVIES_MAX_BYTES = 10 * 1024 * 1024;
+    private static final long RETENTION_SWEEP_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final String SYNC_PREFERENCES_NAME = "sync_scheduler";
+
+    public static PosterLoader providePosterLoader(Context context) {
+        return PosterLoader.getInstance(context.getApplicationContext(),
+                providePosterStore(context.getApplicationContext()));
+    }
+
+    private static PosterStore providePosterStore(Context context) {
         MovieDatabase database = MovieDatabase.getInstance(context.getApplicationContext());
+        return PosterStore.getInstance(context.getApplicationContext(), database.PosterDao(),
+                AppExecutors.getInstance());
+    }
+
+    /**
+     * Only what is needed to read the stored movies is created here, the database being opened in
+     * the background. The rest of the repository's dependencies are created on first use.
+     */
+    public static MoviesRepository provideRepository(Context context) {
+        Context appContext = context.getApplicationContext();
+        MovieDatabase database = MovieDatabase.getInstance(appContext);
         AppExecutors executors = AppExecutors.getInstance();
-        MoviesNetworkDataSource networkDataSource =
-                MoviesNetworkDataSource.getInstance(context.getApplicationContext(), executors);
-        return MoviesRepository.getInstance(database.MoviesDao(), networkDataSource, executors);
+        Lazy<PosterStore> posterStore = new Lazy<>(() -> providePosterStore(appContext));
+        return MoviesRepository.getInstance(database.MoviesDao(),
+                new Lazy<>(() -> provideNetworkDataSource(appContext, database, executors)),
+                executors,
+                new Lazy<>(() -> provideRetentionSweeper(database, posterStore.get())),
+                posterStore);
+    }
+
+    private static RetentionSweeper provideRetentionSweeper(MovieDatabase database,
+                                                            PosterStore posterStore) {
+        RetentionPolicy policy = RetentionPolicy.allOf(
+                RetentionPolicy.keepMostPopular(RETAINED_MOVIES_NUMBER),
+                RetentionPolicy.keepFetchedWithin(RETAINED_MOVIES_MAX_AGE),
+                RetentionPolicy.capMoviesSize(RETAINED_MOVIES_MAX_BYTES));
+        // The posters of the movies swept go with them
+        return new RetentionSweeper(database, policy, RETENTION_SWEEP_INTERVAL,
+                posterStore::collectGarbage);
     }
 
     public static MoviesNetworkDataSource provideNetworkDataSource(Context context) {
         // This call to provide repository is necessary if the app starts from a service - in this
         // case the repository will not exist unless it is specifically created.
         provideRepository(context.getApplicationContext());
-        AppExecutors executors = AppExecutors.getInstance();
-        return MoviesNetworkDataSource.getInstance(context.getApplicationContext(), executors);
+        return provideNetworkDataSource(context.getApplicationContext(),
+                MovieDatabase.getInstance(context.getApplicationContext()),
+                AppExecutors.getInstance());
+    }
+
+    private static MoviesNetworkDataSource provideNetworkDataSource(Context appContext,
+                                                                    MovieDatabase database,
+                                                                    AppExecutors executors) {
+        SyncScheduler syncScheduler = new SyncScheduler(
+                appContext.getSharedPreferences(SYNC_PREFERENCES_NAME, Context.MODE_PRIVATE),
+                System::currentTimeMillis);
+        return MoviesNetworkDataSource.getInstance(appContext, executors,
+                database.PageFetchDao(), syncScheduler);
     }
 
     public static DetailViewModelFactory provideDetailViewModelFactory(Context context, int id) {
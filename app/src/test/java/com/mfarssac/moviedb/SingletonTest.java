@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that {@link Singleton} creates a single instance however many threads race for it.
+ */
+public class SingletonTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void get_racingThreads_createOneInstance() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            // A new singleton each round, so that every round races on its creation
+            for (int round = 0; round < ROUNDS; round++) {
+                Singleton<Object> singleton = new Singleton<>();
+                AtomicInteger created = new AtomicInteger();
+                CountDownLatch ready = new CountDownLatch(THREADS);
+                CountDownLatch start = new CountDownLatch(1);
+
+                List<Future<Object>> instances = new ArrayList<>(THREADS);
+                for (int i = 0; i < THREADS; i++) {
+                    instances.add(threads.submit(() -> {
+                        ready.countDown();
+                        start.await();
+                        return singleton.get(() -> {
+                            created.incrementAndGet();
+                            // Widens the window in which the other threads may race
+                            Thread.yield();
+                            return new Object();
+                        });
+                    }));
+                }
+                ready.await();
+                start.countDown();
+
+                Object first = instances.get(0).get(10, TimeUnit.SECONDS);
+                for (Future<Object> instance : instances) {
+                    assertSame(first, instance.get(10, TimeUnit.SECONDS));
+                }
+                assertEquals(1, created.get());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void get_afterCreation_doesNotCallTheFactory() {
+        Singleton<Object> singleton = new Singleton<>();
+        Object instance = singleton.get(Object::new);
+
+        assertSame(instance, singleton.get(() -> {
+            throw new AssertionError("Factory called again");
+        }));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.mvvm.list;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MoviePageWindow} against a table of movies sorted like the database sorts them,
+ * scrolling through it the way the list does.
+ */
+public class MoviePageWindowTest {
+
+    private static final int TOP_SIZE = 50;
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 5;
+    private static final int PREFETCH_DISTANCE = 10;
+    // Rows on screen
+    private static final int SCREEN = 8;
+
+    private final MoviePageWindow mWindow =
+            new MoviePageWindow(TOP_SIZE, PAGE_SIZE, MAX_PAGES, PREFETCH_DISTANCE);
+    private ListMovieEntry mFirstOnScreen;
+
+    @Test
+    public void scrollingDown_keepsABoundedWindow() {
+        List<ListMovieEntry> table = table(10_000, false);
+        mWindow.setTop(table.subList(0, TOP_SIZE));
+
+        int first = scrollTo(table, table.get(5000));
+
+        List<ListMovieEntry> movies = mWindow.getMovies();
+        assertTrue(movies.size() + " movies", movies.size() <= TOP_SIZE + MAX_PAGES * PAGE_SIZE);
+        assertTrue(mWindow.hasGapAbove());
+        // The top of the list, then the movies around the screen, in ranking order
+        assertEquals(table.subList(0, TOP_SIZE), movies.subList(0, TOP_SIZE));
+        int firstPaged = table.indexOf(movies.get(TOP_SIZE));
+        assertEquals(table.subList(firstPaged, firstPaged + movies.size() - TOP_SIZE),
+                movies.subList(TOP_SIZE, movies.size()));
+        assertEquals(table.get(5000), movies.get(first));
+    }
+
+    @Test
+    public void scrollingBackUp_readsTheDroppedPagesAgain() {
+        List<ListMovieEntry> table = table(1000, false);
+        mWindow.setTop(table.subList(0, TOP_SIZE));
+        scrollTo(table, table.get(600));
+
+        scrollTo(table, table.get(0));
+
+        assertFalse(mWindow.hasGapAbove());
+        List<ListMovieEntry> movies = mWindow.getMovies();
+        assertEquals(table.subList(0, movies.size()), movies);
+        assertTrue(movies.size() + " movies", movies.size() <= TOP_SIZE + MAX_PAGES * PAGE_SIZE);
+    }
+
+    @Test
+    public void scrollingToTheEnd_stopsReading() {
+        List<ListMovieEntry> table = table(130, false);
+        mWindow.setTop(table.subList(0, TOP_SIZE));
+
+        scrollTo(table, table.get(130 - SCREEN));
+
+        assertEquals(MoviePageWindow.Load.NONE, mWindow.toLoad());
+        assertEquals(table, mWindow.getMovies());
+    }
+
+    @Test
+    public void topChange_isShownStraightAway_thenTheWindowIsReadAgain() {
+        List<ListMovieEntry> table = table(1000, false);
+        mWindow.setTop(table.subList(0, TOP_SIZE));
+        scrollTo(table, table.get(100));
+
+        // A sync makes the movies of the first page the most popular ones
+        List<ListMovieEntry> synced = table(1000, true);
+        mWindow.setTop(synced.subList(0, TOP_SIZE));
+
+        List<ListMovieEntry> movies = mWindow.getMovies();
+        assertEquals(synced.subList(0, TOP_SIZE), movies.subList(0, TOP_SIZE));
+        assertEquals(movies.size(), new HashSet<>(movies).size());
+        assertEquals(MoviePageWindow.Load.RELOAD, mWindow.toLoad());
+
+        int count = mWindow.getPagedSize();
+        mWindow.onReload(after(synced, mWindow.getLastTopMovie(), count), count);
+
+        assertEquals(synced.subList(0, TOP_SIZE + count), mWindow.getMovies());
+    }
+
+    @Test
+    public void shortTop_holdsEveryMovie() {
+        List<ListMovieEntry> table = table(30, false);
+        mWindow.setTop(table);
+        mWindow.setVisible(22, 29);
+
+        assertEquals(MoviePageWindow.Load.NONE, mWindow.toLoad());
+        assertEquals(table, mWindow.getMovies());
+    }
+
+    /**
+     * Scrolls a row at a time, reading what the window asks for like the view model does, until
+     * the given movie is the first on screen.
+     *
+     * @return The position of the movie
+     */
+    private int scrollTo(List<ListMovieEntry> table, ListMovieEntry target) {
+        List<ListMovieEntry> movies = mWindow.getMovies();
+        if (mFirstOnScreen == null) mFirstOnScreen = movies.get(0);
+        int step = table.indexOf(target) > table.indexOf(mFirstOnScreen) ? 1 : -1;
+        while (true) {
+            int first = movies.indexOf(mFirstOnScreen);
+            mWindow.setVisible(first, Math.min(first + SCREEN, movies.size()) - 1);
+            switch (mWindow.toLoad()) {
+                case NEXT:
+                    mWindow.onNextPage(after(table, mWindow.getLastMovie(), PAGE_SIZE));
+                    break;
+                case PREVIOUS:
+                    mWindow.onPreviousPage(
+                            before(table, mWindow.getFirstPagedMovie(), PAGE_SIZE));
+                    break;
+                default:
+                    break;
+            }
+            movies = mWindow.getMovies();
+            first = movies.indexOf(mFirstOnScreen);
+            if (mFirstOnScreen == target) return first;
+            mFirstOnScreen = movies.get(first + step);
+        }
+    }
+
+    private static List<ListMovieEntry> after(List<ListMovieEntry> table, ListMovieEntry movie,
+                                              int count) {
+        int start = table.indexOf(movie) + 1;
+        return new ArrayList<>(table.subList(start, Math.min(start + count, table.size())));
+    }
+
+    private static List<ListMovieEntry> before(List<ListMovieEntry> table, ListMovieEntry movie,
+                                               int count) {
+        int end = table.indexOf(movie);
+        return new ArrayList<>(table.subList(Math.max(0, end - count), end));
+    }
+
+    /**
+     * @param size The number of movies
+     * @param synced Whether a sync made the movies ranked from 50 to 70 the most popular ones
+     * @return The movies, sorted from the most popular as the database sorts them
+     */
+    private static List<ListMovieEntry> table(int size, boolean synced) {
+        List<ListMovieEntry> movies = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            float popularity = size - id;
+            if (synced && id > TOP_SIZE && id <= TOP_SIZE + PAGE_SIZE) popularity += size;
+            movies.add(new ListMovieEntry(id, "Movie " + id, popularity, "/poster" + id + ".jpg",
+                    "en", "Original movie " + id, 100 + id));
+        }
+        Collections.sort(movies, (a, b) -> {
+            int byPopularity = Float.compare(b.getPopularity(), a.getPopularity());
+            return byPopularity != 0 ? byPopularity : Integer.compare(b.getId(), a.getId());
+        });
+        return movies;
+    }
+}
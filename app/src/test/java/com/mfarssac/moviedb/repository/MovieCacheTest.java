@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository;
+
+import android.arch.core.executor.testing.InstantTaskExecutorRule;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MovieCache}, and how a stored movie is followed through it as
+ * {@link MoviesRepository#getMovieById(int)} does.
+ */
+public class MovieCacheTest {
+
+    private static final int MAX_SIZE = 3;
+
+    // LiveData values are set on the calling thread
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private final MovieCache mCache = new MovieCache(MAX_SIZE);
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        mCache.put(movie(1, "Movie 1"));
+
+        assertEquals(movie(1, "Movie 1"), mCache.get(1));
+        assertNull(mCache.get(2));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void put_whenFull_evictsTheLeastRecentlyUsedMovie() {
+        mCache.put(movie(1, "Movie 1"));
+        mCache.put(movie(2, "Movie 2"));
+        mCache.put(movie(3, "Movie 3"));
+        mCache.get(1);
+
+        mCache.put(movie(4, "Movie 4"));
+
+        assertTrue(mCache.contains(1));
+        assertFalse(mCache.contains(2));
+        assertTrue(mCache.contains(4));
+    }
+
+    @Test
+    public void contains_neitherCountsNorRefreshesTheMovie() {
+        mCache.put(movie(1, "Movie 1"));
+        mCache.put(movie(2, "Movie 2"));
+        mCache.put(movie(3, "Movie 3"));
+        assertTrue(mCache.contains(1));
+
+        mCache.put(movie(4, "Movie 4"));
+
+        assertFalse(mCache.contains(1));
+        assertEquals(0, mCache.getHitCount() + mCache.getMissCount());
+    }
+
+    @Test
+    public void refresh_onlyReplacesTheCachedMovies() {
+        mCache.put(movie(1, "Movie 1"));
+
+        mCache.refresh(new MovieEntry[]{movie(1, "Movie 1, renamed"), movie(2, "Movie 2")});
+
+        assertEquals("Movie 1, renamed", mCache.get(1).getTitle());
+        assertFalse(mCache.contains(2));
+    }
+
+    @Test
+    public void follow_cachedMovie_isHeldStraightAway_andItsUnchangedReadLeftOut() {
+        MovieEntry cached = movie(1, "Movie 1");
+        mCache.put(cached);
+        MutableLiveData<MovieEntry> stored = new MutableLiveData<>();
+
+        List<MovieEntry> values = observe(mCache.follow(1, stored));
+        assertEquals(Collections.singletonList(cached), values);
+
+        // Room reads the movie again, as a new but equal entry
+        stored.setValue(movie(1, "Movie 1"));
+        assertEquals(1, values.size());
+        assertSame(cached, values.get(0));
+    }
+
+    @Test
+    public void follow_changedMovie_isDisplayedAndCached() {
+        mCache.put(movie(1, "Movie 1"));
+        MutableLiveData<MovieEntry> stored = new MutableLiveData<>();
+        List<MovieEntry> values = observe(mCache.follow(1, stored));
+
+        stored.setValue(movie(1, "Movie 1, renamed"));
+
+        assertEquals(Arrays.asList(movie(1, "Movie 1"), movie(1, "Movie 1, renamed")), values);
+        assertEquals("Movie 1, renamed", mCache.get(1).getTitle());
+    }
+
+    @Test
+    public void follow_uncachedMovie_waitsForTheStoredOne() {
+        MutableLiveData<MovieEntry> stored = new MutableLiveData<>();
+        List<MovieEntry> values = observe(mCache.follow(1, stored));
+        assertTrue(values.isEmpty());
+
+        stored.setValue(movie(1, "Movie 1"));
+
+        assertEquals(Collections.singletonList(movie(1, "Movie 1")), values);
+        assertTrue(mCache.contains(1));
+    }
+
+    @Test
+    public void follow_deletedMovie_leavesTheCache() {
+        mCache.put(movie(1, "Movie 1"));
+        MutableLiveData<MovieEntry> stored = new MutableLiveData<>();
+        List<MovieEntry> values = observe(mCache.follow(1, stored));
+
+        stored.setValue(null);
+
+        assertEquals(Arrays.asList(movie(1, "Movie 1"), null), values);
+        assertFalse(mCache.contains(1));
+    }
+
+    private static List<MovieEntry> observe(LiveData<MovieEntry> movie) {
+        List<MovieEntry> values = new ArrayList<>();
+        movie.observeForever(values::add);
+        return values;
+    }
+
+    private static MovieEntry movie(int id, String title) {
+        return new MovieEntry(id, "false", 100, 7.5f, title, 42.5f, "/poster" + id + ".jpg", "en",
+                "Original movie " + id, new int[]{28, 12}, "/backdrop" + id + ".jpg", "false",
+                "The overview of movie " + id, "2018-06-01");
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.firebase;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link FirebaseMovieMirror} against an in-process stand-in for the Firebase node, which
+ * applies the updates it receives and records them.
+ */
+public class FirebaseMovieMirrorTest {
+
+    private FakeNode mNode;
+    private FirebaseMovieMirror mMirror;
+
+    @Before
+    public void setUp() {
+        mNode = new FakeNode();
+        mMirror = new FirebaseMovieMirror(mNode);
+    }
+
+    @Test
+    public void mirror_beforeFirstSnapshot_sendsNothing() {
+        mMirror.mirror(Arrays.asList(movie(1, 10f), movie(2, 5f)));
+
+        assertTrue(mNode.mUpdates.isEmpty());
+    }
+
+    @Test
+    public void firstSnapshot_equalToPendingMovies_sendsNothing() {
+        List<ListMovieEntry> movies = Arrays.asList(movie(1, 10f), movie(2, 5f));
+        mNode.put(movies);
+
+        mMirror.mirror(movies);
+        assertTrue(mMirror.isEcho(mNode.snapshot()));
+
+        assertTrue(mNode.mUpdates.isEmpty());
+    }
+
+    @Test
+    public void firstSnapshot_sendsOnlyTheDifferencesWithPendingMovies() {
+        // Left by an earlier run: movie 3 is gone from the list, movie 2 changed
+        mNode.put(Arrays.asList(movie(1, 10f), movie(2, 4f), movie(3, 1f)));
+
+        mMirror.mirror(Arrays.asList(movie(1, 10f), movie(2, 5f)));
+        // Superseded by the pending movies, so not published
+        assertTrue(mMirror.isEcho(mNode.snapshot()));
+
+        assertEquals(1, mNode.mUpdates.size());
+        Map<String, Object> update = mNode.mUpdates.get(0);
+        assertEquals(2, update.size());
+        assertEquals(movie(2, 5f), update.get("2"));
+        assertTrue(update.containsKey("3"));
+        assertNull(update.get("3"));
+        // Firebase now holds exactly the list, and its snapshot is the echo of the update
+        assertEquals(Arrays.asList(movie(1, 10f), movie(2, 5f)), mNode.snapshot());
+        assertTrue(mMirror.isEcho(mNode.snapshot()));
+    }
+
+    @Test
+    public void firstSnapshot_withoutPendingMovies_isPublished() {
+        mNode.put(Arrays.asList(movie(1, 10f)));
+
+        assertFalse(mMirror.isEcho(mNode.snapshot()));
+    }
+
+    @Test
+    public void emptyFirstSnapshot_sendsAllPendingMovies() {
+        mMirror.mirror(Arrays.asList(movie(1, 10f), movie(2, 5f)));
+        assertTrue(mMirror.isEcho(Collections.emptyList()));
+
+        assertEquals(1, mNode.mUpdates.size());
+        assertEquals(2, mNode.mUpdates.get(0).size());
+    }
+
+    @Test
+    public void mirror_sendsOneMovieWhenOneChanged() {
+        List<ListMovieEntry> movies = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            movies.add(movie(id, id));
+        }
+        mNode.put(movies);
+        mMirror.isEcho(mNode.snapshot());
+        mMirror.mirror(movies);
+        assertTrue(mNode.mUpdates.isEmpty());
+
+        List<ListMovieEntry> changed = new ArrayList<>(movies);
+        changed.set(41, movie(42, 1000f));
+        mMirror.mirror(changed);
+
+        assertEquals(1, mNode.mUpdates.size());
+        assertEquals(Collections.singletonMap("42", movie(42, 1000f)), mNode.mUpdates.get(0));
+        assertTrue(mMirror.isEcho(mNode.snapshot()));
+    }
+
+    @Test
+    public void isEcho_changeMadeBySomeoneElse_isAdopted() {
+        List<ListMovieEntry> movies = Arrays.asList(movie(1, 10f), movie(2, 5f));
+        mNode.put(movies);
+        mMirror.isEcho(mNode.snapshot());
+
+        // Someone else changes movie 2
+        mNode.put(Collections.singletonList(movie(2, 50f)));
+        assertFalse(mMirror.isEcho(mNode.snapshot()));
+
+        // Mirroring the same list again sends it back, as Firebase no longer holds it
+        mMirror.mirror(movies);
+        assertEquals(Collections.singletonMap("2", movie(2, 5f)), mNode.mUpdates.get(0));
+    }
+
+    private static ListMovieEntry movie(int id, float popularity) {
+        return new ListMovieEntry(id, "Title " + id, popularity, "/poster" + id + ".jpg", "en",
+                "Original title " + id, id * 10);
+    }
+
+    /**
+     * Stand-in for the node of the movies, holding them by id.
+     */
+    private static class FakeNode implements FirebaseMovieMirror.Target {
+        private final Map<String, ListMovieEntry> mChildren = new TreeMap<>();
+        private final List<Map<String, Object>> mUpdates = new ArrayList<>();
+
+        @Override
+        public void updateChildren(Map<String, Object> children) {
+            mUpdates.add(new HashMap<>(children));
+            for (Map.Entry<String, Object> child : children.entrySet()) {
+                if (child.getValue() == null) {
+                    mChildren.remove(child.getKey());
+                } else {
+                    mChildren.put(child.getKey(), (ListMovieEntry) child.getValue());
+                }
+            }
+        }
+
+        /**
+         * Writes the given movies without going through the mirror, as someone else would.
+         */
+        void put(List<ListMovieEntry> movies) {
+            for (ListMovieEntry movie : movies) {
+                mChildren.put(String.valueOf(movie.getId()), movie);
+            }
+        }
+
+        List<ListMovieEntry> snapshot() {
+            return new ArrayList<>(mChildren.values());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.firebase;
+
+import com.mfarssac.moviedb.repository.room.ListMovieEntry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the mapping and sorting of the movies read from Firebase.
+ */
+public class FirebaseMoviesLiveDataTest {
+
+    @Test
+    public void toSortedList_sortsByPopularityNumerically() {
+        List<ListMovieEntry> movies = FirebaseMoviesLiveData.toSortedList(Arrays.asList(
+                movie(1, 9.5f), movie(2, 100f), movie(3, 10.25f)));
+
+        // As text, "9.5" would come first and "100.0" before "10.25"
+        assertEquals(Arrays.asList(2, 3, 1), ids(movies));
+    }
+
+    @Test
+    public void toSortedList_breaksTiesByIdLikeTheDatabase() {
+        List<ListMovieEntry> movies = FirebaseMoviesLiveData.toSortedList(Arrays.asList(
+                movie(4, 7f), movie(9, 7f), movie(6, 8f), movie(5, 7f)));
+
+        assertEquals(Arrays.asList(6, 9, 5, 4), ids(movies));
+    }
+
+    @Test
+    public void toSortedList_keepsTheValuesOfTheMovies() {
+        FirebaseListMovieEntry firebaseMovie = new FirebaseListMovieEntry(12.5f, "/poster.jpg",
+                "fr", "Title", 321, 42, "Titre");
+
+        ListMovieEntry movie =
+                FirebaseMoviesLiveData.toSortedList(Collections.singletonList(firebaseMovie)).get(0);
+
+        assertEquals(new ListMovieEntry(42, "Title", 12.5f, "/poster.jpg", "fr", "Titre", 321),
+                movie);
+    }
+
+    @Test
+    public void toSortedList_empty() {
+        assertEquals(Collections.emptyList(),
+                FirebaseMoviesLiveData.toSortedList(Collections.emptyList()));
+    }
+
+    static FirebaseListMovieEntry movie(int id, float popularity) {
+        return new FirebaseListMovieEntry(popularity, "/poster" + id + ".jpg", "en",
+                "Movie " + id, 100 + id, id, "Original movie " + id);
+    }
+
+    private static List<Integer> ids(List<ListMovieEntry> movies) {
+        List<Integer> ids = new ArrayList<>(movies.size());
+        for (ListMovieEntry movie : movies) {
+            ids.add(movie.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link MovieDbJsonParser}, and that it binds the movies as parsing a page the way it was
+ * done before it streamed did: a JSON tree of the whole page, then each movie serialized back to
+ * a String and bound by a new {@link Gson}.
+ */
+public class MovieDbJsonParserTest {
+
+    private final MovieDbJsonParser mParser = new MovieDbJsonParser();
+
+    @Test
+    public void parse_bindsEveryMovie() throws IOException {
+        MovieDbResponse response = mParser.parse(page(3));
+
+        assertNotNull(response);
+        MovieEntry[] movies = response.getMovies();
+        assertEquals(3, movies.length);
+        for (int i = 0; i < movies.length; i++) {
+            assertMovie(i, movies[i]);
+        }
+    }
+
+    @Test
+    public void parse_sameMoviesAsTreeParsing() throws IOException {
+        String json = page(50);
+
+        MovieEntry[] streamed = mParser.parse(json).getMovies();
+        MovieEntry[] tree = parseAsTree(json);
+
+        assertEquals(tree.length, streamed.length);
+        for (int i = 0; i < tree.length; i++) {
+            assertEquals(tree[i].toString(), streamed[i].toString());
+            assertArrayEquals(tree[i].getGenre_ids(), streamed[i].getGenre_ids());
+        }
+    }
+
+    @Test
+    public void parse_skipsUnknownMembers() throws IOException {
+        String json = "{\"dates\":{\"maximum\":\"2018-07-01\"},\"page\":1,"
+                + "\"results\":[" + movie(0) + "],\"extra\":[1,[2,{\"a\":null}]]}";
+
+        MovieDbResponse response = mParser.parse(json);
+
+        assertNotNull(response);
+        assertMovie(0, response.getMovies()[0]);
+    }
+
+    @Test
+    public void parse_statusCodeError_returnsNull() throws IOException {
+        assertNull(mParser.parse("{\"status_code\":7,"
+                + "\"status_message\":\"Invalid API key\",\"success\":false}"));
+    }
+
+    @Test
+    public void parse_withoutResults_returnsNull() throws IOException {
+        assertNull(mParser.parse("{\"page\":1,\"total_pages\":0}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_truncatedPage_throws() throws IOException {
+        String json = page(2);
+        mParser.parse(json.substring(0, json.length() / 2));
+    }
+
+    /**
+     * Parses the page the way it was done before streaming.
+     */
+    static MovieEntry[] parseAsTree(String json) {
+        JsonObject page = new JsonParser().parse(json).getAsJsonObject();
+        MovieEntry[] movies = new MovieEntry[page.getAsJsonArray("results").size()];
+        int i = 0;
+        for (JsonElement movie : page.getAsJsonArray("results")) {
+            movies[i++] = new Gson().fromJson(movie.toString(), MovieEntry.class);
+        }
+        return movies;
+    }
+
+    private static void assertMovie(int index, MovieEntry movie) {
+        assertEquals(1000 + index, movie.getId());
+        assertEquals("Movie " + index, movie.getTitle());
+        assertEquals(500f - index, movie.getPopularity(), 0f);
+        assertEquals(200 + index, movie.getVote_count());
+        assertEquals("/poster" + index + ".jpg", movie.getPoster_path());
+        assertArrayEquals(new int[]{28, 12}, movie.getGenre_ids());
+        assertEquals("false", movie.getAdult());
+    }
+
+    /**
+     * @return A popular movies page as sent by the server, with the given number of movies
+     */
+    static String page(int movies) {
+        StringBuilder json = new StringBuilder("{\"page\":1,\"total_results\":19920,"
+                + "\"total_pages\":996,\"results\":[");
+        for (int i = 0; i < movies; i++) {
+            if (i > 0) json.append(',');
+            json.append(movie(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String movie(int index) {
+        return "{\"vote_count\":" + (200 + index) + ",\"id\":" + (1000 + index)
+                + ",\"video\":false,\"vote_average\":7.3,\"title\":\"Movie " + index + "\","
+                + "\"popularity\":" + (500 - index) + ",\"poster_path\":\"/poster" + index
+                + ".jpg\",\"original_language\":\"en\",\"original_title\":\"Original movie "
+                + index + "\",\"genre_ids\":[28,12],\"backdrop_path\":\"/backdrop" + index
+                + ".jpg\",\"adult\":false,\"overview\":\"A long enough overview of movie "
+                + index + ", which goes on for a couple of sentences as the real ones do. "
+                + "It mentions \\\"quotes\\\" and accents like \\u00e9.\","
+                + "\"release_date\":\"2018-06-0" + (index % 9 + 1) + "\"}";
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import android.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.mfarssac.moviedb.AppExecutors;
+import com.mfarssac.moviedb.repository.room.MovieEntry;
+import com.mfarssac.moviedb.repository.room.PageFetchDao;
+import com.mfarssac.moviedb.repository.room.PageFetchEntry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests how {@link MoviesNetworkDataSource} fetches a page with its fetch ledger, and a whole
+ * sync, against a stub server on the loopback interface.
+ */
+public class MoviesNetworkDataSourceTest {
+
+    private static final long START_MILLIS = TimeUnit.DAYS.toMillis(17000);
+    private static final int PAGE = 1;
+    private static final int MOVIES = 20;
+    // The pages holding the most popular movies
+    private static final int PAGES = 3;
+    private static final String ETAG = "\"page-etag\"";
+    private static final long NEXT_SYNC_MILLIS = TimeUnit.HOURS.toMillis(3);
+    private static final long TIMEOUT_SECONDS = 10;
+
+    // The batches are posted from the network threads
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private final byte[] mBody = MovieDbJsonParserTest.page(MOVIES)
+            .getBytes(StandardCharsets.UTF_8);
+    private HttpServer mServer;
+    private volatile String mEtag = ETAG;
+    // The If-None-Match header of each request, null when it was unconditional
+    private final List<String> mConditions = Collections.synchronizedList(new ArrayList<>());
+    // The pages the server fails to serve
+    private final Set<Integer> mFailingPages = ConcurrentHashMap.newKeySet();
+
+    private volatile long mNowMillis = START_MILLIS;
+    private FakePageFetchDao mPageFetchDao;
+    private RecordingSyncScheduler mSyncScheduler;
+    private RecordingDataSource mDataSource;
+    // What the sync did, in order
+    private final List<String> mEvents = Collections.synchronizedList(new ArrayList<>());
+    private final List<MovieBatch> mBatches = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", this::serve);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+
+        mPageFetchDao = new FakePageFetchDao();
+        mSyncScheduler = new RecordingSyncScheduler();
+        mDataSource = new RecordingDataSource();
+        mDataSource.getCurrentMovies().observeForever(mBatches::add);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void fetchPage_firstFetch_leavesTheLedgerRowToTheBatch() {
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+
+        MovieEntry[] movies = mDataSource.fetchPage(PAGE, false, batch);
+
+        assertEquals(MOVIES, movies.length);
+        assertNull(mConditions.get(0));
+        PageFetchEntry pageFetch = batch.getPageFetch(PAGE);
+        assertEquals(ETAG, pageFetch.getEtag());
+        assertEquals(mBody.length, pageFetch.getByte_count());
+        assertEquals(START_MILLIS, pageFetch.getFetched_at());
+        // Only recorded with the movies
+        assertEquals(0, mPageFetchDao.mInserts);
+    }
+
+    @Test
+    public void fetchPage_notModified_countsTheBytesSaved() {
+        storeFirstFetch();
+
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+        assertNull(mDataSource.fetchPage(PAGE, false, batch));
+
+        assertEquals(ETAG, mConditions.get(1));
+        assertEquals(1, batch.getUnchangedPageCount());
+        assertEquals(mBody.length, batch.getBytesSaved());
+        assertNull(batch.getPageFetch(PAGE));
+        assertEquals(1, mPageFetchDao.mInserts);
+    }
+
+    @Test
+    public void fetchPage_unchangedHash_skipsTheMovies_andKeepsTheNewValidators() {
+        storeFirstFetch();
+        mEtag = "\"new-page-etag\"";
+        mNowMillis += TimeUnit.HOURS.toMillis(3);
+
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+        assertNull(mDataSource.fetchPage(PAGE, false, batch));
+
+        // No movies to store, nor ledger row to store with them
+        assertNull(batch.getPageFetch(PAGE));
+        assertEquals(1, batch.getUnchangedPageCount());
+        assertEquals(0, batch.getBytesSaved());
+        PageFetchEntry pageFetch = mPageFetchDao.getPageFetch(PAGE);
+        assertEquals("\"new-page-etag\"", pageFetch.getEtag());
+        // Still stored in full once PAGE_FETCH_MAX_AGE after the movies were
+        assertEquals(START_MILLIS, pageFetch.getFetched_at());
+    }
+
+    @Test
+    public void fetchPage_ledgerOlderThanMaxAge_fetchesThePageInFull() {
+        storeFirstFetch();
+        mNowMillis += MoviesNetworkDataSource.PAGE_FETCH_MAX_AGE + 1;
+
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+        MovieEntry[] movies = mDataSource.fetchPage(PAGE, false, batch);
+
+        assertNull(mConditions.get(1));
+        assertEquals(MOVIES, movies.length);
+        assertEquals(mNowMillis, batch.getPageFetch(PAGE).getFetched_at());
+    }
+
+    @Test
+    public void fetchPage_ledgerJustUnderMaxAge_isStillUsed() {
+        storeFirstFetch();
+        mNowMillis += MoviesNetworkDataSource.PAGE_FETCH_MAX_AGE;
+
+        assertNull(mDataSource.fetchPage(PAGE, false, new MoviesNetworkDataSource.PageBatch(1)));
+        assertEquals(ETAG, mConditions.get(1));
+    }
+
+    @Test
+    public void fetchPage_fullFetch_ignoresTheLedger() {
+        storeFirstFetch();
+
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+        MovieEntry[] movies = mDataSource.fetchPage(PAGE, true, batch);
+
+        assertNull(mConditions.get(1));
+        assertEquals(MOVIES, movies.length);
+        assertNotNull(batch.getPageFetch(PAGE));
+        assertEquals(0, batch.getUnchangedPageCount());
+    }
+
+    @Test
+    public void fetchMovies_changedPages_postOneBatch_thenFinishTheJob_thenScheduleTheNext()
+            throws InterruptedException {
+        sync();
+
+        assertEquals(1, mBatches.size());
+        MovieBatch batch = mBatches.get(0);
+        // Every page serves the same movies, which the merge keeps once
+        assertEquals(MOVIES, batch.getMovies().length);
+        assertEquals(PAGES, batch.getPageFetches().length);
+        assertEquals(Collections.singletonList(SyncScheduler.Outcome.CHANGED),
+                mSyncScheduler.mOutcomes);
+        assertEquals(Arrays.asList("finished", "scheduled in " + NEXT_SYNC_MILLIS), mEvents);
+    }
+
+    @Test
+    public void fetchMovies_pagesNotModified_postNothing() throws InterruptedException {
+        sync();
+        // The repository stores the movies along with their ledger rows
+        mPageFetchDao.insert(mBatches.get(0).getPageFetches());
+        mEvents.clear();
+
+        sync();
+
+        assertEquals(1, mBatches.size());
+        assertEquals(PAGES * 2, mConditions.size());
+        for (String condition : mConditions.subList(PAGES, PAGES * 2)) {
+            assertEquals(ETAG, condition);
+        }
+        assertEquals(Arrays.asList(SyncScheduler.Outcome.CHANGED,
+                SyncScheduler.Outcome.UNCHANGED), mSyncScheduler.mOutcomes);
+        assertEquals(Arrays.asList("finished", "scheduled in " + NEXT_SYNC_MILLIS), mEvents);
+    }
+
+    @Test
+    public void fetchMovies_failedPage_failsTheSync_butPostsTheOthers()
+            throws InterruptedException {
+        mFailingPages.add(2);
+
+        sync();
+
+        assertEquals(Collections.singletonList(SyncScheduler.Outcome.FAILED),
+                mSyncScheduler.mOutcomes);
+        // The failed page has no ledger row, so it is fetched in full next time
+        MovieBatch batch = mBatches.get(0);
+        assertEquals(PAGES - 1, batch.getPageFetches().length);
+        for (PageFetchEntry pageFetch : batch.getPageFetches()) {
+            assertTrue(pageFetch.getPage() != 2);
+        }
+        assertEquals(Arrays.asList("finished", "scheduled in " + NEXT_SYNC_MILLIS), mEvents);
+    }
+
+    @Test
+    public void fetchMovies_withoutJob_schedulesTheNext() throws InterruptedException {
+        mDataSource.fetchMovies(null);
+
+        assertTrue(mDataSource.mScheduled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("scheduled in " + NEXT_SYNC_MILLIS), mEvents);
+    }
+
+    /**
+     * Runs a sync as the job service does, and waits for it to schedule the next one.
+     */
+    private void sync() throws InterruptedException {
+        mDataSource.mScheduled = new CountDownLatch(1);
+        mDataSource.fetchMovies(() -> mEvents.add("finished"));
+        assertTrue("The sync didn't finish",
+                mDataSource.mScheduled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Fetches the page, then records it in the ledger as the repository does once its movies are
+     * stored.
+     */
+    private void storeFirstFetch() {
+        MoviesNetworkDataSource.PageBatch batch = new MoviesNetworkDataSource.PageBatch(1);
+        assertEquals(MOVIES, mDataSource.fetchPage(PAGE, false, batch).length);
+        mPageFetchDao.insert(batch.getPageFetch(PAGE));
+    }
+
+    private URL url(int pageNumber) {
+        try {
+            return new URL("http", mServer.getAddress().getHostString(),
+                    mServer.getAddress().getPort(), "/page/" + pageNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        mConditions.add(ifNoneMatch);
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (mFailingPages.contains(Integer.parseInt(path[2]))) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_INTERNAL_ERROR, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", mEtag);
+        exchange.getResponseHeaders().set("Connection", "close");
+        if (mEtag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, mBody.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(mBody);
+        }
+    }
+
+    /**
+     * Data source which records the next sync rather than scheduling a job.
+     */
+    private class RecordingDataSource extends MoviesNetworkDataSource {
+        volatile CountDownLatch mScheduled = new CountDownLatch(1);
+
+        RecordingDataSource() {
+            super(null, AppExecutors.getInstance(), mPageFetchDao, mSyncScheduler,
+                    () -> mNowMillis, MoviesNetworkDataSourceTest.this::url);
+        }
+
+        @Override
+        void scheduleFetchMoviesSync(long delayMillis) {
+            mEvents.add("scheduled in " + delayMillis);
+            mScheduled.countDown();
+        }
+    }
+
+    /**
+     * Records the outcome of each sync, always scheduling the next one at the same interval.
+     */
+    private static class RecordingSyncScheduler extends SyncScheduler {
+        final List<Outcome> mOutcomes = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingSyncScheduler() {
+            super(null, null);
+        }
+
+        @Override
+        synchronized long onSyncFinished(Outcome outcome) {
+            mOutcomes.add(outcome);
+            return NEXT_SYNC_MILLIS;
+        }
+    }
+
+    /**
+     * Fetch ledger kept in memory, counting the writes.
+     */
+    private static class FakePageFetchDao implements PageFetchDao {
+        private final Map<Integer, PageFetchEntry> mPageFetches = new HashMap<>();
+        private int mInserts;
+
+        @Override
+        public synchronized PageFetchEntry getPageFetch(int page) {
+            return mPageFetches.get(page);
+        }
+
+        @Override
+        public synchronized void insert(PageFetchEntry... pageFetchEntries) {
+            mInserts++;
+            for (PageFetchEntry pageFetch : pageFetchEntries) {
+                mPageFetches.put(pageFetch.getPage(), pageFetch);
+            }
+        }
+    }
+}
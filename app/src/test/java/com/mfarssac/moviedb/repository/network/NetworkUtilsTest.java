@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link NetworkUtils#getResponseFromHttpUrl} against a stub server on the loopback
+ * interface.
+ */
+public class NetworkUtilsTest {
+
+    private static final int[] PAGE_SIZES = {20, 500, 5000};
+
+    private StubPageServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubPageServer(PAGE_SIZES);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void getResponse_parsesEveryPageSize() throws IOException {
+        for (int pageSize : PAGE_SIZES) {
+            NetworkUtils.HttpResponse<MovieDbResponse> response = mServer.fetch(pageSize, false);
+
+            assertNotNull(response.body);
+            assertEquals(pageSize, response.body.getMovies().length);
+            assertEquals(StubPageServer.ETAG, response.etag);
+            assertEquals(mServer.bodySize(pageSize, false), response.bytesRead);
+        }
+    }
+
+    @Test
+    public void getResponse_gzip_inflatesTheBody() throws IOException {
+        int pageSize = 500;
+        NetworkUtils.HttpResponse<MovieDbResponse> plain = mServer.fetch(pageSize, false);
+        NetworkUtils.HttpResponse<MovieDbResponse> gzipped = mServer.fetch(pageSize, true);
+
+        assertEquals(pageSize, gzipped.body.getMovies().length);
+        assertEquals(mServer.bodySize(pageSize, true), gzipped.bytesRead);
+        assertTrue(gzipped.bytesRead < plain.bytesRead);
+        // The hash is taken on the decoded body
+        assertEquals(plain.contentHash, gzipped.contentHash);
+    }
+
+    @Test
+    public void getResponse_notModified_doesNotParse() throws IOException {
+        NetworkUtils.HttpResponse<MovieDbResponse> response =
+                NetworkUtils.getResponseFromHttpUrl(mServer.url(20, false), StubPageServer.ETAG,
+                        null, body -> {
+                            throw new AssertionError("Parsed a 304 response");
+                        });
+
+        assertTrue(response.isNotModified());
+        assertNull(response.body);
+        assertEquals(StubPageServer.ETAG, response.etag);
+    }
+}
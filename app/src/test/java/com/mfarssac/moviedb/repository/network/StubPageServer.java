@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stub of the movie server on the loopback interface, serving a popular movies page of each of
+ * the given sizes, plain or gzipped, with an {@link #ETAG}.
+ */
+class StubPageServer {
+
+    static final String ETAG = "\"page-etag\"";
+
+    private final HttpServer mServer;
+    // Body of each page size, and its gzip encoding
+    private final Map<Integer, byte[]> mBodies = new HashMap<>();
+    private final Map<Integer, byte[]> mGzipBodies = new HashMap<>();
+
+    StubPageServer(int... pageSizes) throws IOException {
+        for (int pageSize : pageSizes) {
+            byte[] body = MovieDbJsonParserTest.page(pageSize).getBytes(StandardCharsets.UTF_8);
+            mBodies.put(pageSize, body);
+            mGzipBodies.put(pageSize, gzip(body));
+        }
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", this::serve);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    void stop() {
+        mServer.stop(0);
+    }
+
+    /**
+     * @return The size of the page of the given number of movies, as sent
+     */
+    int bodySize(int pageSize, boolean gzip) {
+        return (gzip ? mGzipBodies : mBodies).get(pageSize).length;
+    }
+
+    NetworkUtils.HttpResponse<MovieDbResponse> fetch(int pageSize, boolean gzip)
+            throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(url(pageSize, gzip), null, null,
+                new MovieDbJsonParser()::parse);
+    }
+
+    URL url(int pageSize, boolean gzip) throws IOException {
+        return new URL("http", mServer.getAddress().getHostString(),
+                mServer.getAddress().getPort(), "/" + (gzip ? "gzip/" : "plain/") + pageSize);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        int pageSize = Integer.parseInt(path[2]);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        // Every fetch opens its connection, as NetworkUtils disconnects once it has read the body
+        exchange.getResponseHeaders().set("Connection", "close");
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = mBodies.get(pageSize);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if ("gzip".equals(path[1]) && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = mGzipBodies.get(pageSize);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.network;
+
+import android.content.SharedPreferences;
+
+import com.mfarssac.moviedb.repository.network.SyncScheduler.Outcome;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link SyncScheduler} with a clock moved by hand and preferences kept in memory.
+ */
+public class SyncSchedulerTest {
+
+    private static final long START_MILLIS = TimeUnit.DAYS.toMillis(17000);
+
+    private FakeClock mClock;
+    private FakePreferences mPreferences;
+    private SyncScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mPreferences = new FakePreferences();
+        mScheduler = new SyncScheduler(mPreferences, mClock);
+    }
+
+    @Test
+    public void getDelayMillis_beforeAnySync_isTheMinimumInterval() {
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, mScheduler.getDelayMillis());
+    }
+
+    @Test
+    public void getDelayMillis_countsDownToTheNextSync() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+        mClock.advance(TimeUnit.HOURS.toMillis(1));
+
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS - TimeUnit.HOURS.toMillis(1),
+                mScheduler.getDelayMillis());
+
+        mClock.advance(SyncScheduler.MIN_INTERVAL_MILLIS);
+        assertEquals(0, mScheduler.getDelayMillis());
+    }
+
+    @Test
+    public void getDelayMillis_clockSetBack_isCapped() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+        mClock.advance(-TimeUnit.DAYS.toMillis(10));
+
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS, mScheduler.getDelayMillis());
+    }
+
+    @Test
+    public void getDelayMillis_isReadBackByANewScheduler() {
+        long delay = mScheduler.onSyncFinished(Outcome.FAILED);
+
+        // Syncs usually run in a new process
+        SyncScheduler scheduler = new SyncScheduler(mPreferences, mClock);
+
+        assertEquals(delay, scheduler.getDelayMillis());
+    }
+
+    @Test
+    public void failedSyncs_doubleTheRetryDelay() {
+        long expected = SyncScheduler.FIRST_RETRY_DELAY_MILLIS;
+        for (int i = 0; i < 6; i++) {
+            assertEquals(expected, mScheduler.onSyncFinished(Outcome.FAILED));
+            mClock.advance(expected);
+            expected *= 2;
+        }
+    }
+
+    @Test
+    public void failedSyncs_retryDelayIsCapped() {
+        for (int i = 0; i < 100; i++) {
+            long delay = mScheduler.onSyncFinished(Outcome.FAILED);
+            mClock.advance(delay);
+        }
+
+        assertEquals(SyncScheduler.MAX_RETRY_DELAY_MILLIS,
+                mScheduler.onSyncFinished(Outcome.FAILED));
+    }
+
+    @Test
+    public void getRetryDelayMillis_doesNotOverflow() {
+        assertEquals(SyncScheduler.MAX_RETRY_DELAY_MILLIS,
+                SyncScheduler.getRetryDelayMillis(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void changedSync_syncsAtTheMinimumInterval() {
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, mScheduler.onSyncFinished(Outcome.CHANGED));
+    }
+
+    @Test
+    public void unchangedSyncs_stretchTheInterval() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+
+        // Unchanged for 3 hours: no sooner than the minimum interval
+        mClock.advance(TimeUnit.HOURS.toMillis(3));
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS,
+                mScheduler.onSyncFinished(Outcome.UNCHANGED));
+
+        // Unchanged for 10 hours: half of that
+        mClock.advance(TimeUnit.HOURS.toMillis(7));
+        assertEquals(TimeUnit.HOURS.toMillis(5), mScheduler.onSyncFinished(Outcome.UNCHANGED));
+
+        // Unchanged for 20 hours
+        mClock.advance(TimeUnit.HOURS.toMillis(10));
+        assertEquals(TimeUnit.HOURS.toMillis(10), mScheduler.onSyncFinished(Outcome.UNCHANGED));
+    }
+
+    @Test
+    public void unchangedSyncs_intervalIsCapped() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+
+        mClock.advance(TimeUnit.DAYS.toMillis(30));
+
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS,
+                mScheduler.onSyncFinished(Outcome.UNCHANGED));
+    }
+
+    @Test
+    public void changedSync_resetsTheStretchedInterval() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+        mClock.advance(TimeUnit.DAYS.toMillis(2));
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS,
+                mScheduler.onSyncFinished(Outcome.UNCHANGED));
+
+        mClock.advance(SyncScheduler.MAX_INTERVAL_MILLIS);
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, mScheduler.onSyncFinished(Outcome.CHANGED));
+
+        // Stretched again from the last change only
+        mClock.advance(SyncScheduler.MIN_INTERVAL_MILLIS);
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS,
+                mScheduler.onSyncFinished(Outcome.UNCHANGED));
+    }
+
+    @Test
+    public void successfulSync_resetsTheRetryDelay() {
+        for (int i = 0; i < 5; i++) {
+            mScheduler.onSyncFinished(Outcome.FAILED);
+        }
+
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+
+        assertEquals(SyncScheduler.FIRST_RETRY_DELAY_MILLIS,
+                mScheduler.onSyncFinished(Outcome.FAILED));
+    }
+
+    @Test
+    public void unchangedSync_resetsTheRetryDelay() {
+        mScheduler.onSyncFinished(Outcome.CHANGED);
+        for (int i = 0; i < 5; i++) {
+            mScheduler.onSyncFinished(Outcome.FAILED);
+        }
+
+        mScheduler.onSyncFinished(Outcome.UNCHANGED);
+
+        assertEquals(SyncScheduler.FIRST_RETRY_DELAY_MILLIS,
+                mScheduler.onSyncFinished(Outcome.FAILED));
+    }
+
+    private static class FakeClock implements SyncScheduler.Clock {
+        private long mMillis = START_MILLIS;
+
+        void advance(long millis) {
+            mMillis += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mMillis;
+        }
+    }
+
+    /**
+     * {@link SharedPreferences} kept in a map, edits being applied at once.
+     */
+    private static class FakePreferences implements SharedPreferences {
+        private final Map<String, Object> mValues = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class FakeEditor implements Editor {
+            private final Map<String, Object> mChanges = new HashMap<>();
+            private boolean mClear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                mChanges.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                // A null value removes the key once applied
+                mChanges.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                mClear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                apply();
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                if (mClear) mValues.clear();
+                for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                    if (change.getValue() == null) {
+                        mValues.remove(change.getKey());
+                    } else {
+                        mValues.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Round trips random genre ids through {@link GenreIdsConverter}, and checks the parsing of the
+ * ids stored up to version 4.
+ */
+public class GenreIdsConverterTest {
+
+    private static final int ROUND_TRIPS = 10_000;
+
+    @Test
+    public void roundTrip_randomIds_areUnchanged() {
+        Random random = new Random(42);
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            int[] genreIds = new int[random.nextInt(30)];
+            for (int j = 0; j < genreIds.length; j++) {
+                // Any int, including negative and extreme ones
+                genreIds[j] = random.nextInt();
+            }
+            byte[] blob = GenreIdsConverter.genreIdsToBlob(genreIds);
+
+            assertEquals(genreIds.length * Integer.BYTES, blob.length);
+            assertArrayEquals(genreIds, GenreIdsConverter.blobToGenreIds(blob));
+        }
+    }
+
+    @Test
+    public void roundTrip_extremeIds_areUnchanged() {
+        int[] genreIds = {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+        assertArrayEquals(genreIds,
+                GenreIdsConverter.blobToGenreIds(GenreIdsConverter.genreIdsToBlob(genreIds)));
+    }
+
+    @Test
+    public void roundTrip_emptyAndNull() {
+        assertArrayEquals(new int[0],
+                GenreIdsConverter.blobToGenreIds(GenreIdsConverter.genreIdsToBlob(new int[0])));
+        assertNull(GenreIdsConverter.genreIdsToBlob(null));
+        assertNull(GenreIdsConverter.blobToGenreIds(null));
+    }
+
+    @Test
+    public void genreIdsToBlob_isBigEndian() {
+        assertArrayEquals(new byte[]{0, 0, 0, 28, 0, 0, 1, 2},
+                GenreIdsConverter.genreIdsToBlob(new int[]{28, 258}));
+    }
+
+    @Test
+    public void parseLegacyGenreIds_separatedIds() {
+        assertArrayEquals(new int[]{28, 12}, GenreIdsConverter.parseLegacyGenreIds("28|12"));
+        assertArrayEquals(new int[]{28}, GenreIdsConverter.parseLegacyGenreIds("28"));
+        assertArrayEquals(new int[]{28, 12}, GenreIdsConverter.parseLegacyGenreIds(" 28 | 12 "));
+    }
+
+    @Test
+    public void parseLegacyGenreIds_empty() {
+        assertArrayEquals(new int[0], GenreIdsConverter.parseLegacyGenreIds(""));
+        assertArrayEquals(new int[0], GenreIdsConverter.parseLegacyGenreIds("|"));
+    }
+
+    @Test
+    public void parseLegacyGenreIds_malformedPartsAreSkipped() {
+        assertArrayEquals(new int[]{28, 12}, GenreIdsConverter.parseLegacyGenreIds("28||12|"));
+        assertArrayEquals(new int[]{12}, GenreIdsConverter.parseLegacyGenreIds("action|12|1.5"));
+        // What the old converter's split("|") made of "28|12"
+        assertArrayEquals(new int[]{2, 8, 1, 2},
+                GenreIdsConverter.parseLegacyGenreIds("2|8|||1|2"));
+        assertArrayEquals(new int[0],
+                GenreIdsConverter.parseLegacyGenreIds("99999999999|[28, 12]"));
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The MovieDB App was created by M a r c  F a r s s a c
+ *
+ */
+package com.mfarssac.moviedb.repository.room;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests {@link ListMovieEntry}.
+ */
+public class ListMovieEntryTest {
+
+    @Test
+    public void equals_comparesEveryValue() {
+        ListMovieEntry movie = new ListMovieEntry(1, "Title", 7.5f, "/p.jpg", "en", "Title", 10);
+
+        assertEquals(movie, new ListMovieEntry(1, "Title", 7.5f, "/p.jpg", "en", "Title", 10));
+        assertEquals(movie.hashCode(),
+                new ListMovieEntry(1, "Title", 7.5f, "/p.jpg", "en", "Title", 10).hashCode());
+        assertNotEquals(movie, new ListMovieEntry(1, "Title", 7.6f, "/p.jpg", "en", "Title", 10));
+        assertNotEquals(movie, new ListMovieEntry(1, "Title", 7.5f, "/p.jpg", "en", "Title", 11));
+        assertNotEquals(movie, new ListMovieEntry(1, "Title", 7.5f, null, "en", "Title", 10));
+    }
+}